@@ -0,0 +1,169 @@
+package wkteditor;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A list of elements, which is split into chunks of a fixed size. Snapshots
+ * share the chunks with the list, and a chunk is copied when it is changed
+ * for the first time after a snapshot. Taking a snapshot therefore only
+ * copies the array of chunks, and editing copies only the chunks of the
+ * edited elements.
+ * <p>
+ * Each chunk is owned by the list that created or copied it. Taking a
+ * snapshot gives both lists a new owner, so neither owns any chunk anymore.
+ */
+public class ChunkedElementList extends AbstractList<WKTElement> implements ElementList, RandomAccess {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int DEFAULT_CHUNK_CAPACITY = 4;
+
+    private WKTElement[][] chunks;
+    private Object[] owners;
+    private Object owner;
+    private int size;
+
+    public ChunkedElementList() {
+        chunks = new WKTElement[DEFAULT_CHUNK_CAPACITY][];
+        owners = new Object[DEFAULT_CHUNK_CAPACITY];
+        owner = new Object();
+        size = 0;
+    }
+
+    /**
+     * Creates a list, that shares the chunks of the given list.
+     *
+     * @param list The list to share the chunks with.
+     */
+    private ChunkedElementList(ChunkedElementList list) {
+        chunks = list.chunks.clone();
+        owners = new Object[chunks.length];
+        owner = new Object();
+        size = list.size;
+    }
+
+    @Override
+    public ChunkedElementList snapshot() {
+        // The chunks are shared now, so they have to be copied before they are changed
+        owner = new Object();
+        return new ChunkedElementList(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public WKTElement get(int index) {
+        Objects.checkIndex(index, size);
+        return chunks[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public WKTElement set(int index, WKTElement element) {
+        Objects.checkIndex(index, size);
+        WKTElement[] chunk = writableChunk(index >> CHUNK_SHIFT);
+        WKTElement previous = chunk[index & CHUNK_MASK];
+        chunk[index & CHUNK_MASK] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, WKTElement element) {
+        if (index != size) {
+            Objects.checkIndex(index, size);
+        }
+
+        if ((size >> CHUNK_SHIFT) == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            owners = Arrays.copyOf(owners, owners.length * 2);
+        }
+        if (chunks[size >> CHUNK_SHIFT] == null) {
+            chunks[size >> CHUNK_SHIFT] = new WKTElement[CHUNK_SIZE];
+            owners[size >> CHUNK_SHIFT] = owner;
+        }
+        size++;
+
+        // Elements are usually added to the end, anything else moves the following elements
+        for (int i = size - 1; i > index; i--) {
+            set(i, get(i - 1));
+        }
+        set(index, element);
+        modCount++;
+    }
+
+    @Override
+    public WKTElement remove(int index) {
+        WKTElement element = get(index);
+        removeRange(index, index + 1);
+        return element;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        for (int i = toIndex; i < size; i++) {
+            set(fromIndex + i - toIndex, get(i));
+        }
+        truncate(size - (toIndex - fromIndex));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super WKTElement> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            WKTElement element = get(i);
+            if (!filter.test(element)) {
+                if (kept != i) {
+                    set(kept, element);
+                }
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        truncate(kept);
+        return true;
+    }
+
+    /**
+     * Removes all elements after the given size. Chunks, that are no longer
+     * needed, are dropped.
+     *
+     * @param newSize The number of elements to keep.
+     */
+    private void truncate(int newSize) {
+        final int chunkCount = (newSize + CHUNK_MASK) >> CHUNK_SHIFT;
+        for (int i = chunkCount; i < chunks.length && chunks[i] != null; i++) {
+            chunks[i] = null;
+            owners[i] = null;
+        }
+        if ((newSize & CHUNK_MASK) != 0) {
+            // Don't keep removed elements reachable
+            WKTElement[] chunk = writableChunk(chunkCount - 1);
+            Arrays.fill(chunk, newSize & CHUNK_MASK, CHUNK_SIZE, null);
+        }
+        size = newSize;
+        modCount++;
+    }
+
+    /**
+     * Gets a chunk, that may be changed. If the chunk is shared with a
+     * snapshot, it is copied first.
+     *
+     * @param chunk The index of the chunk.
+     * @return The chunk.
+     */
+    private WKTElement[] writableChunk(int chunk) {
+        if (owners[chunk] != owner) {
+            chunks[chunk] = chunks[chunk].clone();
+            owners[chunk] = owner;
+        }
+        return chunks[chunk];
+    }
+}
@@ -0,0 +1,412 @@
+package wkteditor;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A list of elements, that stores the geometries of all elements in a few
+ * large arrays instead of one group of objects per element. There is a
+ * column for the type, the id and the bounds of each element, and columns for
+ * the coordinates of all points, the starts of all rings and lines, and the
+ * starts of all polygons of multi polygons. Each element refers to its range
+ * of these shared columns.
+ * <p>
+ * The garbage collector does not have to look into arrays of primitive
+ * values, so the cost of collecting garbage does not grow with the number of
+ * stored elements, and each point takes exactly 8 bytes.
+ * <p>
+ * {@link #get(int)} returns a new view of a stored element, which reads its
+ * points from the shared columns. A view has the id of the stored element, so
+ * it is equal to all other views of the element. A view copies its points
+ * before it is modified, and the modification is only stored by setting the
+ * view with {@link #set(int, WKTElement)}. Elements set that way, and
+ * elements the columns can not represent, like geometry collections, are
+ * kept as objects.
+ * <p>
+ * Elements can only be added to the end of the list. The shared columns are
+ * only ever appended to, while removing elements builds new columns, so a
+ * {@link #snapshot()} can share them with the list. The columns describing
+ * the elements are shared as well, and copied by the first change after the
+ * snapshot.
+ */
+public class ColumnarElementList extends AbstractList<WKTElement> implements ElementList, RandomAccess {
+    private static final int OBJECT = 0;
+    private static final int POINT = 1;
+    private static final int LINE_STRING = 2;
+    private static final int POLYGON = 3;
+    private static final int MULTI_POINT = 4;
+    private static final int MULTI_LINE_STRING = 5;
+    private static final int MULTI_POLYGON = 6;
+
+    private IntList types;
+    private IntList ids;
+    private IntList minX;
+    private IntList minY;
+    private IntList maxX;
+    private IntList maxY;
+    private IntList pointStarts;
+    private IntList partStarts;
+    private IntList groupStarts;
+    private IntList coordinates;
+    private IntList parts;
+    private IntList groups;
+    private Map<Integer, WKTElement> objects;
+
+    public ColumnarElementList() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param elementCapacity The number of elements the list can hold before it grows.
+     * @param pointCapacity   The number of points the list can hold before it grows.
+     */
+    public ColumnarElementList(int elementCapacity, int pointCapacity) {
+        types = new IntList(elementCapacity);
+        ids = new IntList(elementCapacity);
+        minX = new IntList(elementCapacity);
+        minY = new IntList(elementCapacity);
+        maxX = new IntList(elementCapacity);
+        maxY = new IntList(elementCapacity);
+        pointStarts = new IntList(elementCapacity + 1);
+        partStarts = new IntList(elementCapacity + 1);
+        groupStarts = new IntList(elementCapacity + 1);
+        coordinates = new IntList(pointCapacity * 2);
+        parts = new IntList();
+        groups = new IntList();
+        objects = new HashMap<>();
+
+        pointStarts.add(0);
+        partStarts.add(0);
+        groupStarts.add(0);
+    }
+
+    /**
+     * Creates a list, that shares all columns with the given list.
+     *
+     * @param list The list to share the columns with.
+     */
+    private ColumnarElementList(ColumnarElementList list) {
+        types = shareColumn(list.types);
+        ids = shareColumn(list.ids);
+        minX = shareColumn(list.minX);
+        minY = shareColumn(list.minY);
+        maxX = shareColumn(list.maxX);
+        maxY = shareColumn(list.maxY);
+        pointStarts = shareColumn(list.pointStarts);
+        partStarts = shareColumn(list.partStarts);
+        groupStarts = shareColumn(list.groupStarts);
+        // Only appended to, so they don't have to be copied by the given list
+        coordinates = new IntList(list.coordinates.array(), 0, list.coordinates.size());
+        parts = new IntList(list.parts.array(), 0, list.parts.size());
+        groups = new IntList(list.groups.array(), 0, list.groups.size());
+        objects = new HashMap<>(list.objects);
+    }
+
+    @Override
+    public ColumnarElementList snapshot() {
+        return new ColumnarElementList(this);
+    }
+
+    /**
+     * Shares a column with a new list. Both lists copy the column before they
+     * change it.
+     *
+     * @param column The column to share.
+     * @return The column of the new list.
+     */
+    private static IntList shareColumn(IntList column) {
+        column.share();
+        return new IntList(column.array(), 0, column.size());
+    }
+
+    @Override
+    public int size() {
+        return types.size();
+    }
+
+    /**
+     * Gets a view of a stored element, or the element itself if it is kept
+     * as an object.
+     *
+     * @param index The index of the element.
+     * @return The element.
+     */
+    @Override
+    public WKTElement get(int index) {
+        Objects.checkIndex(index, size());
+
+        final int id = ids.get(index);
+        final int type = types.get(index);
+        if (type == OBJECT) {
+            return objects.get(index);
+        }
+
+        final int pointStart = pointStarts.get(index);
+        if (type == POINT) {
+            return new WKTPoint(id, coordinates.get(pointStart * 2), coordinates.get(pointStart * 2 + 1));
+        }
+
+        CoordinateSequence points = new CoordinateSequence(coordinates.array(), pointStart * 2,
+                pointStarts.get(index + 1) - pointStart,
+                minX.get(index), minY.get(index), maxX.get(index), maxY.get(index));
+        final int partStart = partStarts.get(index);
+        IntList partList = new IntList(parts.array(), partStart, partStarts.get(index + 1) - partStart);
+        switch (type) {
+            case LINE_STRING:
+                return new WKTLineString(id, points);
+            case POLYGON:
+                return new WKTPolygon(id, points, partList);
+            case MULTI_POINT:
+                return new WKTMultiPoint(id, points);
+            case MULTI_LINE_STRING:
+                return new WKTMultiLineString(id, points, partList);
+            default:
+                final int groupStart = groupStarts.get(index);
+                return new WKTMultiPolygon(id, points, partList,
+                        new IntList(groups.array(), groupStart, groupStarts.get(index + 1) - groupStart));
+        }
+    }
+
+    /**
+     * Replaces an element. The new element is kept as an object, so later
+     * changes of it are part of this list.
+     *
+     * @param index   The index of the element to replace.
+     * @param element The new element.
+     * @return The element previously at the index.
+     */
+    @Override
+    public WKTElement set(int index, WKTElement element) {
+        WKTElement previous = get(index);
+
+        // The points of the previous element stay unused until elements are removed
+        types.set(index, OBJECT);
+        ids.set(index, element.getId());
+        objects.put(index, element);
+        return previous;
+    }
+
+    /**
+     * Adds an element to the end of this list.
+     *
+     * @param index   The index to add the element at, which must be the size of this list.
+     * @param element The element to add.
+     * @throws UnsupportedOperationException If the index is not at the end of this list.
+     */
+    @Override
+    public void add(int index, WKTElement element) {
+        if (index != size()) {
+            Objects.checkIndex(index, size());
+            throw new UnsupportedOperationException("Elements can only be added to the end");
+        }
+
+        final int type = getType(element);
+        switch (type) {
+            case POINT:
+                WKTPoint point = (WKTPoint) element;
+                coordinates.add(point.getX());
+                coordinates.add(point.getY());
+                break;
+            case LINE_STRING:
+                ((WKTLineString) element).getPoints().appendTo(coordinates);
+                break;
+            case POLYGON:
+                WKTPolygon polygon = (WKTPolygon) element;
+                polygon.getPoints().appendTo(coordinates);
+                for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+                    parts.add(polygon.getRingStart(ring));
+                }
+                break;
+            case MULTI_POINT:
+                ((WKTMultiPoint) element).getPoints().appendTo(coordinates);
+                break;
+            case MULTI_LINE_STRING:
+                WKTMultiLineString lines = (WKTMultiLineString) element;
+                lines.getPoints().appendTo(coordinates);
+                for (int line = 0; line < lines.getLineCount(); line++) {
+                    parts.add(lines.getStart(line));
+                }
+                break;
+            case MULTI_POLYGON:
+                WKTMultiPolygon polygons = (WKTMultiPolygon) element;
+                polygons.getPoints().appendTo(coordinates);
+                for (int i = 0; i < polygons.getPolygonCount(); i++) {
+                    groups.add(polygons.getPolygonStart(i));
+                    for (int ring = polygons.getPolygonStart(i); ring < polygons.getPolygonEnd(i); ring++) {
+                        parts.add(polygons.getRingStart(ring));
+                    }
+                }
+                break;
+            default:
+                objects.put(size(), element);
+                break;
+        }
+
+        types.add(type);
+        ids.add(element.getId());
+        final boolean bounded = type != OBJECT && !element.isEmpty();
+        minX.add(bounded ? element.getMinX() : 0);
+        minY.add(bounded ? element.getMinY() : 0);
+        maxX.add(bounded ? element.getMaxX() : 0);
+        maxY.add(bounded ? element.getMaxY() : 0);
+        pointStarts.add(coordinates.size() / 2);
+        partStarts.add(parts.size());
+        groupStarts.add(groups.size());
+        modCount++;
+    }
+
+    @Override
+    public WKTElement remove(int index) {
+        WKTElement element = get(index);
+        BitSet removed = new BitSet();
+        removed.set(index);
+        removeAll(removed);
+        return element;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        BitSet removed = new BitSet();
+        removed.set(fromIndex, toIndex);
+        removeAll(removed);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super WKTElement> filter) {
+        BitSet removed = new BitSet();
+        for (int i = 0; i < size(); i++) {
+            if (filter.test(get(i))) {
+                removed.set(i);
+            }
+        }
+        if (removed.isEmpty()) {
+            return false;
+        }
+        removeAll(removed);
+        return true;
+    }
+
+    /**
+     * Finds the last element with the id of the given element. Only the
+     * column of ids is searched, no views are created.
+     *
+     * @param o The element to search for.
+     * @return The index of the element, or <code>-1</code> if it is not in this list.
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o instanceof WKTElement) {
+            final int id = ((WKTElement) o).getId();
+            for (int i = size() - 1; i >= 0; i--) {
+                if (ids.get(i) == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof WKTElement) {
+            final int id = ((WKTElement) o).getId();
+            for (int i = 0; i < size(); i++) {
+                if (ids.get(i) == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes elements by building new columns, that only contain the
+     * remaining elements. Existing views and snapshots keep the old columns.
+     *
+     * @param removed The indices of the elements to remove.
+     */
+    private void removeAll(BitSet removed) {
+        final int count = size() - removed.cardinality();
+        IntList newTypes = new IntList(count);
+        IntList newIds = new IntList(count);
+        IntList newMinX = new IntList(count);
+        IntList newMinY = new IntList(count);
+        IntList newMaxX = new IntList(count);
+        IntList newMaxY = new IntList(count);
+        IntList newPointStarts = new IntList(count + 1);
+        IntList newPartStarts = new IntList(count + 1);
+        IntList newGroupStarts = new IntList(count + 1);
+        IntList newCoordinates = new IntList();
+        IntList newParts = new IntList();
+        IntList newGroups = new IntList();
+        Map<Integer, WKTElement> newObjects = new HashMap<>();
+
+        newPointStarts.add(0);
+        newPartStarts.add(0);
+        newGroupStarts.add(0);
+        for (int i = 0; i < size(); i++) {
+            if (removed.get(i)) {
+                continue;
+            }
+
+            if (types.get(i) == OBJECT) {
+                newObjects.put(newTypes.size(), objects.get(i));
+            }
+            newTypes.add(types.get(i));
+            newIds.add(ids.get(i));
+            newMinX.add(minX.get(i));
+            newMinY.add(minY.get(i));
+            newMaxX.add(maxX.get(i));
+            newMaxY.add(maxY.get(i));
+            if (types.get(i) != OBJECT) {
+                newCoordinates.addAll(coordinates.array(), pointStarts.get(i) * 2, pointStarts.get(i + 1) * 2);
+                newParts.addAll(parts.array(), partStarts.get(i), partStarts.get(i + 1));
+                newGroups.addAll(groups.array(), groupStarts.get(i), groupStarts.get(i + 1));
+            }
+            newPointStarts.add(newCoordinates.size() / 2);
+            newPartStarts.add(newParts.size());
+            newGroupStarts.add(newGroups.size());
+        }
+
+        types = newTypes;
+        ids = newIds;
+        minX = newMinX;
+        minY = newMinY;
+        maxX = newMaxX;
+        maxY = newMaxY;
+        pointStarts = newPointStarts;
+        partStarts = newPartStarts;
+        groupStarts = newGroupStarts;
+        coordinates = newCoordinates;
+        parts = newParts;
+        groups = newGroups;
+        objects = newObjects;
+        modCount++;
+    }
+
+    /**
+     * Gets the type of column storage for an element.
+     *
+     * @param element The element.
+     * @return The type, or {@link #OBJECT} if the element is kept as an object.
+     */
+    private static int getType(WKTElement element) {
+        Class<?> type = element.getClass();
+        if (type == WKTPoint.class) {
+            return POINT;
+        } else if (type == WKTLineString.class) {
+            return LINE_STRING;
+        } else if (type == WKTPolygon.class) {
+            return POLYGON;
+        } else if (type == WKTMultiPoint.class) {
+            return MULTI_POINT;
+        } else if (type == WKTMultiLineString.class) {
+            return MULTI_LINE_STRING;
+        } else if (type == WKTMultiPolygon.class) {
+            return MULTI_POLYGON;
+        }
+        return OBJECT;
+    }
+}
@@ -0,0 +1,835 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.io.WKTWriter;
+import wkteditor.ui.DisplayOptions;
+import wkteditor.ui.Transform;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A sequence of points, stored as interleaved x- and y-coordinates in a
+ * single growable array. Elements consisting of several parts keep all parts
+ * in one sequence and address them by index ranges, so the number of objects
+ * does not grow with the number of points or parts.
+ * <p>
+ * The unused capacity of the array is a gap, which is moved to where points
+ * are inserted or removed. Moving the gap only moves the points between its
+ * old and new position, so repeated edits at the same place take constant
+ * time, no matter how many points the sequence has. Points are appended by
+ * inserting them at the end, where the gap usually is.
+ * <p>
+ * The sequence keeps the bounds of its points. Adding a point extends them in
+ * constant time. Operations, that remove or move points, invalidate them, and
+ * they are computed again when they are needed next.
+ * <p>
+ * A sequence can also show a range of an array it shares with other
+ * sequences, as done by {@link ColumnarElementList}. The range is copied to an
+ * array of its own before the sequence is modified.
+ * <p>
+ * Sequences, that are rarely used, can be replaced by a compressed copy,
+ * which stores the points packed by {@link PackedCoordinates}. A compressed
+ * sequence keeps its bounds, but all other operations decompress the points
+ * into a temporary array first, which is not kept. Modifying a compressed
+ * sequence decompresses it for good.
+ * <p>
+ * Paths of at least {@value #SEGMENT_INDEX_THRESHOLD} points are checked for
+ * nearby points with a {@link SegmentIndex}, which is built when it is first
+ * needed. Points appended after the index has been built are checked one by
+ * one, until there are enough of them to build the index again. Changing the
+ * indexed points discards the index.
+ */
+public final class CoordinateSequence {
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int SEGMENT_INDEX_THRESHOLD = 256;
+
+    private int[] coordinates;
+    private int offset;
+    private int size;
+    private int gapStart;
+    private int gapLength;
+    private boolean shared;
+    private byte[] packed;
+    private boolean boundsValid;
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+    private SegmentIndex segmentIndex;
+
+    public CoordinateSequence() {
+        coordinates = new int[DEFAULT_CAPACITY * 2];
+        offset = 0;
+        size = 0;
+        gapStart = 0;
+        gapLength = DEFAULT_CAPACITY;
+        shared = false;
+        packed = null;
+        boundsValid = true;
+    }
+
+    /**
+     * Creates a sequence, that shows a range of a shared array. The array is
+     * not modified by this sequence.
+     *
+     * @param coordinates The shared array of interleaved coordinates.
+     * @param offset      The index of the x-coordinate of the first point in the array.
+     * @param size        The number of points.
+     * @param minX        The smallest x-coordinate of the points.
+     * @param minY        The smallest y-coordinate of the points.
+     * @param maxX        The largest x-coordinate of the points.
+     * @param maxY        The largest y-coordinate of the points.
+     */
+    CoordinateSequence(int[] coordinates, int offset, int size, int minX, int minY, int maxX, int maxY) {
+        this.coordinates = coordinates;
+        this.offset = offset;
+        this.size = size;
+        this.gapStart = size;
+        this.gapLength = 0;
+        this.shared = true;
+        this.packed = null;
+        this.boundsValid = true;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Creates a copy of this sequence.
+     *
+     * @return The copy.
+     */
+    public CoordinateSequence copy() {
+        if (packed != null) {
+            return decompressed().copy();
+        }
+
+        final int capacity = Math.max(size, DEFAULT_CAPACITY);
+        CoordinateSequence copy = new CoordinateSequence();
+        copy.coordinates = new int[capacity * 2];
+        copyPoints(0, size, copy.coordinates, 0);
+        copy.size = size;
+        copy.gapStart = size;
+        copy.gapLength = capacity - size;
+        copy.boundsValid = boundsValid;
+        copy.minX = minX;
+        copy.minY = minY;
+        copy.maxX = maxX;
+        copy.maxY = maxY;
+        copy.segmentIndex = segmentIndex;
+        return copy;
+    }
+
+    /**
+     * Creates a compressed copy of this sequence. Sequences sharing their
+     * array are not compressed, as they don't own their points.
+     *
+     * @return The compressed copy, or this sequence if it is empty, shared or compressed already.
+     */
+    CoordinateSequence compress() {
+        if (size == 0 || shared || packed != null) {
+            return this;
+        }
+
+        validateBounds();
+        CoordinateSequence compressed = new CoordinateSequence(null, 0, size, minX, minY, maxX, maxY);
+        compressed.shared = false;
+        compressed.packed = PackedCoordinates.pack(this);
+        return compressed;
+    }
+
+    /**
+     * Checks whether the points of this sequence are compressed.
+     *
+     * @return <code>true</code> if the points are compressed.
+     */
+    public boolean isCompressed() {
+        return packed != null;
+    }
+
+    /**
+     * Gets a sequence with the same points, that is not compressed. Reading
+     * many points from a compressed sequence should be done with this, as
+     * every single read decompresses all points.
+     *
+     * @return This sequence, or a temporary uncompressed copy if it is compressed.
+     */
+    public CoordinateSequence decompressed() {
+        if (packed == null) {
+            return this;
+        }
+
+        int[] unpacked = new int[size * 2];
+        PackedCoordinates.unpack(packed, size, unpacked);
+        return new CoordinateSequence(unpacked, 0, size, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Adds a point to the end of this sequence.
+     *
+     * @param x The x-coordinate of the point to add.
+     * @param y The y-coordinate of the point to add.
+     */
+    public void add(int x, int y) {
+        insert(size, x, y);
+    }
+
+    /**
+     * Inserts a point into this sequence. The following points are moved
+     * back by one index.
+     *
+     * @param index The index of the inserted point.
+     * @param x     The x-coordinate of the point to insert.
+     * @param y     The y-coordinate of the point to insert.
+     * @throws IndexOutOfBoundsException If the index is negative or greater than the size.
+     */
+    public void insert(int index, int x, int y) {
+        Objects.checkIndex(index, size + 1);
+        moveGap(index, 1);
+        if (segmentIndex != null && index < segmentIndex.getPointCount()) {
+            segmentIndex = null;
+        }
+        coordinates[gapStart * 2] = x;
+        coordinates[gapStart * 2 + 1] = y;
+        gapStart++;
+        gapLength--;
+
+        if (size == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+            boundsValid = true;
+        } else if (boundsValid) {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        size++;
+    }
+
+    /**
+     * Removes a range of points from this sequence. The following points are
+     * moved to the front.
+     *
+     * @param from The index of the first point to remove (inclusive).
+     * @param to   The index of the last point to remove (exclusive).
+     * @throws IndexOutOfBoundsException If the range is not within this sequence.
+     */
+    public void remove(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        if (from == to) {
+            return;
+        }
+
+        moveGap(to, 0);
+        if (segmentIndex != null && from < segmentIndex.getPointCount()) {
+            segmentIndex = null;
+        }
+        gapStart = from;
+        gapLength += to - from;
+        size -= to - from;
+        invalidateBounds();
+    }
+
+    /**
+     * Moves the gap to the given index, and makes sure it has the given
+     * length. If the array is shared or too small, the points are copied to a
+     * new array.
+     *
+     * @param index     The index of the point, that will follow the gap.
+     * @param minLength The length the gap must have at least.
+     */
+    private void moveGap(int index, int minLength) {
+        if (packed != null) {
+            coordinates = decompressed().coordinates;
+            packed = null;
+        }
+
+        if (shared || gapLength < minLength) {
+            final int capacity = Math.max(Math.max(size * 2, size + minLength), DEFAULT_CAPACITY);
+            int[] moved = new int[capacity * 2];
+            copyPoints(0, index, moved, 0);
+            copyPoints(index, size, moved, index + capacity - size);
+            coordinates = moved;
+            offset = 0;
+            gapLength = capacity - size;
+            shared = false;
+        } else if (index < gapStart) {
+            System.arraycopy(coordinates, index * 2, coordinates, (index + gapLength) * 2, (gapStart - index) * 2);
+        } else if (index > gapStart) {
+            System.arraycopy(coordinates, (gapStart + gapLength) * 2, coordinates, gapStart * 2, (index - gapStart) * 2);
+        }
+        gapStart = index;
+    }
+
+    /**
+     * Copies the coordinates of a range of points to an array without a gap.
+     *
+     * @param from        The index of the first point (inclusive).
+     * @param to          The index of the last point (exclusive).
+     * @param target      The array to copy the coordinates to.
+     * @param targetIndex The index of the first point in the target array.
+     */
+    private void copyPoints(int from, int to, int[] target, int targetIndex) {
+        final int split = Math.min(Math.max(from, gapStart), to);
+        System.arraycopy(coordinates, offset + from * 2, target, targetIndex * 2, (split - from) * 2);
+        System.arraycopy(coordinates, offset + (split + gapLength) * 2,
+                target, (targetIndex + split - from) * 2, (to - split) * 2);
+    }
+
+    /**
+     * Gets the number of points in this sequence.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether this sequence contains no points.
+     *
+     * @return <code>true</code> if there are no points.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the x-coordinate of a point. For compressed sequences this
+     * decompresses all points, see {@link #decompressed()}.
+     *
+     * @param index The index of the point.
+     * @return The x-coordinate of the point.
+     */
+    public int getX(int index) {
+        if (packed != null) {
+            return decompressed().getX(index);
+        }
+        return coordinates[offset + (index < gapStart ? index : index + gapLength) * 2];
+    }
+
+    /**
+     * Gets the y-coordinate of a point. For compressed sequences this
+     * decompresses all points, see {@link #decompressed()}.
+     *
+     * @param index The index of the point.
+     * @return The y-coordinate of the point.
+     */
+    public int getY(int index) {
+        if (packed != null) {
+            return decompressed().getY(index);
+        }
+        return coordinates[offset + (index < gapStart ? index : index + gapLength) * 2 + 1];
+    }
+
+    /**
+     * Paints the points in the given range.
+     *
+     * @param g    The graphics to paint with.
+     * @param opt  The display options defining how the points should look.
+     * @param from The index of the first point (inclusive).
+     * @param to   The index of the last point (exclusive).
+     */
+    void paintPoints(Graphics2D g, DisplayOptions opt, int from, int to) {
+        if (packed != null) {
+            decompressed().paintPoints(g, opt, from, to);
+            return;
+        }
+
+        Transform transform = opt.getTransform();
+        for (int i = from; i < to; i++) {
+            g.fillOval(transform.transformX(getX(i)) - opt.getPointRadius(),
+                    transform.transformY(getY(i)) - opt.getPointRadius(),
+                    opt.getPointDiameter(), opt.getPointDiameter());
+        }
+    }
+
+    /**
+     * Paints the points in the given range, connected by lines.
+     *
+     * @param g      The graphics to paint with.
+     * @param opt    The display options defining how the path should look.
+     * @param from   The index of the first point (inclusive).
+     * @param to     The index of the last point (exclusive).
+     * @param closed Whether the last point is connected to the first one by a
+     *               dashed line, as for sub-polygons.
+     */
+    void paintPath(Graphics2D g, DisplayOptions opt, int from, int to, boolean closed) {
+        if (packed != null) {
+            decompressed().paintPath(g, opt, from, to, closed);
+            return;
+        }
+
+        Transform transform = opt.getTransform();
+        BasicStroke strokeNormal = new BasicStroke(opt.getLineWidth());
+
+        g.setStroke(strokeNormal);
+        for (int i = from + 1; i < to; i++) {
+            g.drawLine(transform.transformX(getX(i - 1)), transform.transformY(getY(i - 1)),
+                    transform.transformX(getX(i)), transform.transformY(getY(i)));
+        }
+        paintPoints(g, opt, from, to);
+
+        if (closed && to - from > 2) {
+            g.setStroke(new BasicStroke(opt.getLineWidth(),
+                    BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0.0f,
+                    new float[]{opt.getLineWidth() * 2.0f}, 0.0f));
+            g.drawLine(transform.transformX(getX(from)), transform.transformY(getY(from)),
+                    transform.transformX(getX(to - 1)), transform.transformY(getY(to - 1)));
+            g.setStroke(strokeNormal);
+        }
+    }
+
+    /**
+     * Checks if the given coordinates are within <code>maxDistance</code> of
+     * any point in the given range.
+     *
+     * @param from        The index of the first point (inclusive).
+     * @param to          The index of the last point (exclusive).
+     * @param x           The x-coordinate of the point to check.
+     * @param y           The y-coordinate of the point to check.
+     * @param maxDistance The maximum distance.
+     * @return Whether the given point is close to any point.
+     */
+    boolean isOnPoints(int from, int to, double x, double y, double maxDistance) {
+        if (packed != null) {
+            return decompressed().isOnPoints(from, to, x, y, maxDistance);
+        }
+
+        // The points before and after the gap are contiguous in the array
+        final int split = Math.min(Math.max(from, gapStart), to);
+        final double maxDistanceSq = maxDistance * maxDistance;
+        return isNearPoints(offset + from * 2, offset + split * 2, x, y, maxDistanceSq)
+                || isNearPoints(offset + (split + gapLength) * 2, offset + (to + gapLength) * 2, x, y, maxDistanceSq);
+    }
+
+    /**
+     * Checks if the given coordinates are close to any point in a contiguous
+     * range of the array.
+     *
+     * @param fromPosition  The position of the first coordinate in the array (inclusive).
+     * @param toPosition    The position after the last coordinate in the array (exclusive).
+     * @param x             The x-coordinate of the point to check.
+     * @param y             The y-coordinate of the point to check.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @return Whether the given point is close to any point.
+     */
+    private boolean isNearPoints(int fromPosition, int toPosition, double x, double y, double maxDistanceSq) {
+        for (int i = fromPosition; i < toPosition; i += 2) {
+            double dx = coordinates[i] - x;
+            double dy = coordinates[i + 1] - y;
+            if (dx * dx + dy * dy <= maxDistanceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the given coordinates are within <code>maxDistance</code> of
+     * the path connecting the points in the given range.
+     *
+     * @param from        The index of the first point (inclusive).
+     * @param to          The index of the last point (exclusive).
+     * @param x           The x-coordinate of the point to check.
+     * @param y           The y-coordinate of the point to check.
+     * @param maxDistance The maximum distance.
+     * @return Whether the given point is on the path.
+     */
+    boolean isOnPath(int from, int to, double x, double y, double maxDistance) {
+        if (packed != null) {
+            return decompressed().isOnPath(from, to, x, y, maxDistance);
+        }
+
+        if (to - from >= SEGMENT_INDEX_THRESHOLD) {
+            SegmentIndex index = getSegmentIndex();
+            final int indexed = index.getPointCount();
+            if (index.isOnPath(this, from, Math.min(to, indexed), x, y, maxDistance)) {
+                return true;
+            }
+            // The segments of the appended points, starting with the last indexed point
+            return to > indexed && isOnPathLinear(Math.max(from, indexed - 1), to, x, y, maxDistance);
+        }
+        return isOnPathLinear(from, to, x, y, maxDistance);
+    }
+
+    /**
+     * Checks if the given coordinates are within <code>maxDistance</code> of
+     * the path connecting the points in the given range, by checking every
+     * segment.
+     *
+     * @param from        The index of the first point (inclusive).
+     * @param to          The index of the last point (exclusive).
+     * @param x           The x-coordinate of the point to check.
+     * @param y           The y-coordinate of the point to check.
+     * @param maxDistance The maximum distance.
+     * @return Whether the given point is on the path.
+     */
+    private boolean isOnPathLinear(int from, int to, double x, double y, double maxDistance) {
+        if (to - from < 2) {
+            return isOnPoints(from, to, x, y, maxDistance);
+        }
+
+        // Points close to a point of the path are close to its segments as well
+
+        final int split = Math.min(Math.max(from, gapStart), to);
+        final double maxDistanceSq = maxDistance * maxDistance;
+        if (split > from && split < to && Line2D.ptSegDistSq(getX(split - 1), getY(split - 1),
+                getX(split), getY(split), x, y) <= maxDistanceSq) {
+            // The segment across the gap
+            return true;
+        }
+        return isNearSegments(offset + from * 2, offset + split * 2, x, y, maxDistanceSq)
+                || isNearSegments(offset + (split + gapLength) * 2, offset + (to + gapLength) * 2, x, y, maxDistanceSq);
+    }
+
+    /**
+     * Checks if the given coordinates are close to the path connecting the
+     * points in a contiguous range of the array.
+     *
+     * @param fromPosition  The position of the first coordinate in the array (inclusive).
+     * @param toPosition    The position after the last coordinate in the array (exclusive).
+     * @param x             The x-coordinate of the point to check.
+     * @param y             The y-coordinate of the point to check.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @return Whether the given point is on the path.
+     */
+    private boolean isNearSegments(int fromPosition, int toPosition, double x, double y, double maxDistanceSq) {
+        for (int i = fromPosition + 2; i < toPosition; i += 2) {
+            double distance = Line2D.ptSegDistSq(coordinates[i - 2], coordinates[i - 1],
+                    coordinates[i], coordinates[i + 1], x, y);
+            if (distance <= maxDistanceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the point in the given range, that is closest to the given
+     * coordinates, if it is within the given distance.
+     *
+     * @param from          The index of the first point (inclusive).
+     * @param to            The index of the last point (exclusive).
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if one is found.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if no point is close enough.
+     */
+    double closestOnPoints(int from, int to, double x, double y, double maxDistanceSq,
+                           @Nullable Point2D.Double closest) {
+        if (packed != null) {
+            return decompressed().closestOnPoints(from, to, x, y, maxDistanceSq, closest);
+        }
+
+        double found = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            final double dx = getX(i) - x;
+            final double dy = getY(i) - y;
+            final double distanceSq = dx * dx + dy * dy;
+            if (distanceSq <= maxDistanceSq) {
+                found = maxDistanceSq = distanceSq;
+                if (closest != null) {
+                    closest.setLocation(getX(i), getY(i));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the point on the path connecting the points in the given range,
+     * that is closest to the given coordinates, if it is within the given
+     * distance. Long paths are searched with the {@link SegmentIndex}.
+     *
+     * @param from          The index of the first point (inclusive).
+     * @param to            The index of the last point (exclusive).
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if one is found.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if the path is not close enough.
+     */
+    double closestOnPath(int from, int to, double x, double y, double maxDistanceSq,
+                         @Nullable Point2D.Double closest) {
+        if (packed != null) {
+            return decompressed().closestOnPath(from, to, x, y, maxDistanceSq, closest);
+        }
+
+        if (to - from < 2) {
+            return closestOnPoints(from, to, x, y, maxDistanceSq, closest);
+        }
+        if (to - from < SEGMENT_INDEX_THRESHOLD) {
+            return closestOnSegments(from, to - 1, x, y, maxDistanceSq, closest);
+        }
+
+        SegmentIndex index = getSegmentIndex();
+        final int indexed = index.getPointCount();
+        double found = index.closestOnPath(this, from, Math.min(to, indexed), x, y, maxDistanceSq, closest);
+        if (to > indexed) {
+            // The segments of the appended points, starting with the last indexed point
+            found = Math.min(found, closestOnSegments(Math.max(from, indexed - 1), to - 1,
+                    x, y, Math.min(found, maxDistanceSq), closest));
+        }
+        return found;
+    }
+
+    /**
+     * Finds the closest point on a range of segments. Segment
+     * <code>i</code> connects the points <code>i</code> and <code>i + 1</code>.
+     *
+     * @param firstSegment  The index of the first segment (inclusive).
+     * @param endSegment    The index after the last segment (exclusive).
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if one is found.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if no segment is close enough.
+     */
+    double closestOnSegments(int firstSegment, int endSegment, double x, double y, double maxDistanceSq,
+                             @Nullable Point2D.Double closest) {
+        double found = Double.POSITIVE_INFINITY;
+        for (int i = firstSegment; i < endSegment; i++) {
+            final double distanceSq = closestOnSegment(getX(i), getY(i), getX(i + 1), getY(i + 1),
+                    x, y, maxDistanceSq, closest);
+            if (distanceSq <= maxDistanceSq) {
+                found = maxDistanceSq = distanceSq;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the point on a segment, that is closest to the given coordinates,
+     * if it is within the given distance.
+     *
+     * @param x1            The x-coordinate of the start of the segment.
+     * @param y1            The y-coordinate of the start of the segment.
+     * @param x2            The x-coordinate of the end of the segment.
+     * @param y2            The y-coordinate of the end of the segment.
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if it is close enough.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if the segment is not close enough.
+     */
+    private static double closestOnSegment(int x1, int y1, int x2, int y2, double x, double y,
+                                           double maxDistanceSq, @Nullable Point2D.Double closest) {
+        final double dx = (double) x2 - x1;
+        final double dy = (double) y2 - y1;
+        final double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+
+        final double closestX = x1 + t * dx;
+        final double closestY = y1 + t * dy;
+        final double distanceSq = (closestX - x) * (closestX - x) + (closestY - y) * (closestY - y);
+        if (distanceSq > maxDistanceSq) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (closest != null) {
+            closest.setLocation(closestX, closestY);
+        }
+        return distanceSq;
+    }
+
+    /**
+     * Passes all points to the given consumer, in order.
+     *
+     * @param consumer The consumer of the points.
+     */
+    void forEachPoint(WKTElement.PointConsumer consumer) {
+        forEachPoint(0, size, consumer);
+    }
+
+    /**
+     * Passes a range of points to the given consumer, in order.
+     *
+     * @param from     The index of the first point (inclusive).
+     * @param to       The index of the last point (exclusive).
+     * @param consumer The consumer of the points.
+     * @throws IndexOutOfBoundsException If the range is not within this sequence.
+     */
+    void forEachPoint(int from, int to, WKTElement.PointConsumer consumer) {
+        Objects.checkFromToIndex(from, to, size);
+        if (packed != null) {
+            decompressed().forEachPoint(from, to, consumer);
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            consumer.accept(getX(i), getY(i));
+        }
+    }
+
+    /**
+     * Gets the index of the segments, and builds it again if it is missing,
+     * or if many points have been appended since it was built.
+     *
+     * @return The index, covering at least most of the points.
+     */
+    private SegmentIndex getSegmentIndex() {
+        if (segmentIndex == null || size - segmentIndex.getPointCount() > segmentIndex.getPointCount() / 8) {
+            segmentIndex = new SegmentIndex(this);
+        }
+        return segmentIndex;
+    }
+
+    /**
+     * Gets the smallest x-coordinate of all points.
+     *
+     * @return The smallest x-coordinate, undefined if this sequence is empty.
+     */
+    public int getMinX() {
+        validateBounds();
+        return minX;
+    }
+
+    /**
+     * Gets the smallest y-coordinate of all points.
+     *
+     * @return The smallest y-coordinate, undefined if this sequence is empty.
+     */
+    public int getMinY() {
+        validateBounds();
+        return minY;
+    }
+
+    /**
+     * Gets the largest x-coordinate of all points.
+     *
+     * @return The largest x-coordinate, undefined if this sequence is empty.
+     */
+    public int getMaxX() {
+        validateBounds();
+        return maxX;
+    }
+
+    /**
+     * Gets the largest y-coordinate of all points.
+     *
+     * @return The largest y-coordinate, undefined if this sequence is empty.
+     */
+    public int getMaxY() {
+        validateBounds();
+        return maxY;
+    }
+
+    /**
+     * Appends the interleaved coordinates of all points to the given list.
+     *
+     * @param column The list to append the coordinates to.
+     */
+    void appendTo(IntList column) {
+        if (packed != null) {
+            decompressed().appendTo(column);
+            return;
+        }
+
+        column.addAll(coordinates, offset, offset + gapStart * 2);
+        column.addAll(coordinates, offset + (gapStart + gapLength) * 2, offset + (size + gapLength) * 2);
+    }
+
+    /**
+     * Marks the bounds as outdated, after points have been removed or moved.
+     */
+    void invalidateBounds() {
+        boundsValid = false;
+    }
+
+    /**
+     * Computes the bounds again, if they are outdated.
+     */
+    private void validateBounds() {
+        if (boundsValid) {
+            return;
+        }
+
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, getX(i));
+            minY = Math.min(minY, getY(i));
+            maxX = Math.max(maxX, getX(i));
+            maxY = Math.max(maxY, getY(i));
+        }
+        boundsValid = true;
+    }
+
+    /**
+     * Writes the points in the given range as comma separated wkt
+     * coordinates, enclosed in parenthesis.
+     *
+     * @param out    The output to write to.
+     * @param from   The index of the first point (inclusive).
+     * @param to     The index of the last point (exclusive).
+     * @param closed Whether the first point is repeated at the end, as
+     *               required for the rings of polygons.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    void writeWKT(Appendable out, int from, int to, boolean closed) throws IOException {
+        if (packed != null) {
+            decompressed().writeWKT(out, from, to, closed);
+            return;
+        }
+
+        out.append('(');
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                out.append(", ");
+            }
+            WKTWriter.appendCoordinate(out, getX(i), getY(i));
+        }
+        if (closed && to > from) {
+            out.append(", ");
+            WKTWriter.appendCoordinate(out, getX(from), getY(from));
+        }
+        out.append(')');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CoordinateSequence that = (CoordinateSequence) o;
+        if (size != that.size) {
+            return false;
+        }
+        CoordinateSequence these = decompressed();
+        that = that.decompressed();
+        for (int i = 0; i < size; i++) {
+            if (these.getX(i) != that.getX(i) || these.getY(i) != that.getY(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        CoordinateSequence these = decompressed();
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + these.getX(i);
+            result = 31 * result + these.getY(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+package wkteditor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable version of a document. The snapshot shares its storage with
+ * the document, so it is taken in constant time, and the document only
+ * copies what is edited afterwards. A snapshot can be read by any thread,
+ * without locking, while the document is edited.
+ *
+ * @see WKTEditor#snapshot()
+ */
+public final class DocumentSnapshot {
+    private final long version;
+    private final List<WKTElement> elements;
+    private final Set<WKTElement> selection;
+
+    DocumentSnapshot(long version, List<WKTElement> elements, Set<WKTElement> selection) {
+        this.version = version;
+        this.elements = Collections.unmodifiableList(elements);
+        this.selection = Collections.unmodifiableSet(selection);
+    }
+
+    /**
+     * Gets the version of the document. The version changes every time the
+     * document is changed, so snapshots with the same version have the same
+     * content.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the elements of the document.
+     *
+     * @return The elements, which must not be modified.
+     */
+    public List<WKTElement> getElements() {
+        return elements;
+    }
+
+    /**
+     * Checks whether an element was selected.
+     *
+     * @param element The element to check.
+     * @return <code>true</code> if the element was selected.
+     */
+    public boolean isSelected(WKTElement element) {
+        return selection.contains(element);
+    }
+}
@@ -0,0 +1,18 @@
+package wkteditor;
+
+import java.util.List;
+
+/**
+ * A list of the elements of a document, that can take snapshots of itself.
+ * Taking a snapshot does not copy the list. The list and the snapshot share
+ * their storage, and the parts changed later are copied first.
+ */
+public interface ElementList extends List<WKTElement> {
+    /**
+     * Creates a snapshot of this list, which is not affected by later changes
+     * of this list. The elements themselves are not copied.
+     *
+     * @return The snapshot, which may be read by any thread, but must not be modified.
+     */
+    ElementList snapshot();
+}
@@ -0,0 +1,179 @@
+package wkteditor;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers. It is used to store the offsets of
+ * the parts of an element within its {@link CoordinateSequence}.
+ * <p>
+ * Like a {@link CoordinateSequence}, a list can show a range of a shared
+ * array, which is copied before the list is modified.
+ */
+final class IntList {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] values;
+    private int offset;
+    private int size;
+    private boolean shared;
+
+    IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param capacity The number of values the list can hold before it grows.
+     */
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, DEFAULT_CAPACITY)];
+        offset = 0;
+        size = 0;
+        shared = false;
+    }
+
+    /**
+     * Creates a list, that shows a range of a shared array. The array is not
+     * modified by this list.
+     *
+     * @param values The shared array.
+     * @param offset The index of the first value in the array.
+     * @param size   The number of values.
+     */
+    IntList(int[] values, int offset, int size) {
+        this.values = values;
+        this.offset = offset;
+        this.size = size;
+        this.shared = true;
+    }
+
+    /**
+     * Creates a copy of this list.
+     *
+     * @return The copy.
+     */
+    IntList copy() {
+        IntList copy = new IntList();
+        copy.values = Arrays.copyOfRange(values, offset, offset + Math.max(size, DEFAULT_CAPACITY));
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Adds a value to the end of this list.
+     *
+     * @param value The value to add.
+     */
+    void add(int value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Adds a range of an array to the end of this list.
+     *
+     * @param source The array containing the values to add.
+     * @param from   The index of the first value (inclusive).
+     * @param to     The index of the last value (exclusive).
+     */
+    void addAll(int[] source, int from, int to) {
+        ensureCapacity(size + to - from);
+        System.arraycopy(source, from, values, size, to - from);
+        size += to - from;
+    }
+
+    /**
+     * Sets a value.
+     *
+     * @param index The index of the value.
+     * @param value The new value.
+     */
+    void set(int index, int value) {
+        ensureCapacity(size);
+        values[index] = value;
+    }
+
+    /**
+     * Marks the array of this list as shared, so it is copied before this
+     * list is modified.
+     */
+    void share() {
+        shared = true;
+    }
+
+    /**
+     * Makes sure this list has an array of its own, that can hold the given
+     * number of values.
+     *
+     * @param capacity The number of values.
+     */
+    private void ensureCapacity(int capacity) {
+        if (shared || capacity > values.length) {
+            int length = Math.max(Math.max(capacity, size * 2), DEFAULT_CAPACITY);
+            values = Arrays.copyOfRange(values, offset, offset + length);
+            offset = 0;
+            shared = false;
+        }
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param index The index of the value.
+     * @return The value.
+     */
+    int get(int index) {
+        return values[offset + index];
+    }
+
+    /**
+     * Gets the number of values in this list.
+     *
+     * @return The number of values.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether this list contains no values.
+     *
+     * @return <code>true</code> if there are no values.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the array holding the values of this list. The values start at
+     * index 0 unless this list shows a shared array. Values added later may
+     * be stored in a different array.
+     *
+     * @return The array, which must not be modified.
+     */
+    int[] array() {
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        IntList that = (IntList) o;
+        return Arrays.equals(values, offset, offset + size, that.values, that.offset, that.offset + that.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = offset; i < offset + size; i++) {
+            result = 31 * result + values[i];
+        }
+        return result;
+    }
+}
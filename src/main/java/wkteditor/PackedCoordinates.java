@@ -0,0 +1,81 @@
+package wkteditor;
+
+import java.util.Arrays;
+
+/**
+ * Compresses the points of a {@link CoordinateSequence}. Each coordinate is
+ * stored as the difference to the same coordinate of the previous point,
+ * which is small for most geometries. The differences are zig-zag encoded, so
+ * small negative values are small as well, and written as variable length
+ * integers with 7 bits per byte.
+ */
+final class PackedCoordinates {
+    private static final int MAX_BYTES_PER_POINT = 10;
+
+    private PackedCoordinates() {
+    }
+
+    /**
+     * Compresses points.
+     *
+     * @param sequence The sequence containing the points.
+     * @return The compressed points.
+     */
+    static byte[] pack(CoordinateSequence sequence) {
+        byte[] buffer = new byte[sequence.size() * MAX_BYTES_PER_POINT];
+        int position = 0;
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < sequence.size(); i++) {
+            position = writeDelta(buffer, position, sequence.getX(i) - x);
+            position = writeDelta(buffer, position, sequence.getY(i) - y);
+            x = sequence.getX(i);
+            y = sequence.getY(i);
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Decompresses points into interleaved x- and y-coordinates.
+     *
+     * @param data   The compressed points.
+     * @param size   The number of points.
+     * @param target The array to write the coordinates to, which must hold at least <code>size * 2</code> values.
+     */
+    static void unpack(byte[] data, int size, int[] target) {
+        int position = 0;
+        for (int i = 0; i < size * 2; i++) {
+            // Read one variable length integer
+            int shift = 0;
+            int zigZag = 0;
+            byte b;
+            do {
+                b = data[position++];
+                zigZag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            final int delta = (zigZag >>> 1) ^ -(zigZag & 1);
+
+            // x- and y-coordinates alternate, each is relative to the previous one of its kind
+            target[i] = i < 2 ? delta : target[i - 2] + delta;
+        }
+    }
+
+    /**
+     * Writes a zig-zag encoded variable length integer.
+     *
+     * @param buffer   The buffer to write to.
+     * @param position The position to write at.
+     * @param value    The value to write.
+     * @return The position after the written bytes.
+     */
+    private static int writeDelta(byte[] buffer, int position, int value) {
+        int zigZag = (value << 1) ^ (value >> 31);
+        while ((zigZag & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((zigZag & 0x7f) | 0x80);
+            zigZag >>>= 7;
+        }
+        buffer[position++] = (byte) zigZag;
+        return position;
+    }
+}
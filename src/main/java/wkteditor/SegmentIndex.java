@@ -0,0 +1,260 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+
+/**
+ * An index of the segments connecting the points of a
+ * {@link CoordinateSequence}, so a long path is checked for points close to
+ * it without measuring the distance to every segment.
+ * <p>
+ * Consecutive segments are grouped into chunks of {@value #CHUNK_SIZE}, and
+ * the bounds of each chunk are stored. The chunks are grouped the same way
+ * into levels of {@value #FAN_OUT} nodes each, up to a single node. The
+ * segments of a path are usually close to their neighbours, so the bounds
+ * are small, and a search only descends into the few nodes near the point.
+ * <p>
+ * The index only stores the bounds of the points, not their positions in the
+ * array, so it stays valid while the gap of the sequence moves and is shared
+ * with copies of the sequence. It covers the first {@link #getPointCount()}
+ * points, and is replaced when any of them changes.
+ */
+final class SegmentIndex {
+    private static final int CHUNK_SIZE = 32;
+    private static final int FAN_OUT = 16;
+
+    private final int pointCount;
+    /**
+     * The bounds of the nodes of each level, starting with the chunks. Each
+     * node has four values, the smallest x- and y-coordinate followed by the
+     * largest x- and y-coordinate.
+     */
+    private final int[][] levels;
+
+    /**
+     * Builds the index of all points of a sequence.
+     *
+     * @param points The points of the path.
+     */
+    SegmentIndex(CoordinateSequence points) {
+        pointCount = points.size();
+        final int segmentCount = Math.max(pointCount - 1, 0);
+        final int chunkCount = Math.max((segmentCount + CHUNK_SIZE - 1) / CHUNK_SIZE, 1);
+
+        int levelCount = 1;
+        for (int nodes = chunkCount; nodes > 1; nodes = (nodes + FAN_OUT - 1) / FAN_OUT) {
+            levelCount++;
+        }
+        levels = new int[levelCount][];
+
+        int[] chunks = new int[chunkCount * 4];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int last = Math.min((chunk + 1) * CHUNK_SIZE, pointCount - 1);
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int i = chunk * CHUNK_SIZE; i <= last; i++) {
+                minX = Math.min(minX, points.getX(i));
+                minY = Math.min(minY, points.getY(i));
+                maxX = Math.max(maxX, points.getX(i));
+                maxY = Math.max(maxY, points.getY(i));
+            }
+            setBounds(chunks, chunk, minX, minY, maxX, maxY);
+        }
+        levels[0] = chunks;
+
+        for (int level = 1; level < levelCount; level++) {
+            int[] children = levels[level - 1];
+            final int nodeCount = (children.length / 4 + FAN_OUT - 1) / FAN_OUT;
+            int[] nodes = new int[nodeCount * 4];
+            for (int node = 0; node < nodeCount; node++) {
+                final int firstChild = node * FAN_OUT;
+                final int lastChild = Math.min(firstChild + FAN_OUT, children.length / 4);
+                int minX = Integer.MAX_VALUE;
+                int minY = Integer.MAX_VALUE;
+                int maxX = Integer.MIN_VALUE;
+                int maxY = Integer.MIN_VALUE;
+                for (int child = firstChild; child < lastChild; child++) {
+                    minX = Math.min(minX, children[child * 4]);
+                    minY = Math.min(minY, children[child * 4 + 1]);
+                    maxX = Math.max(maxX, children[child * 4 + 2]);
+                    maxY = Math.max(maxY, children[child * 4 + 3]);
+                }
+                setBounds(nodes, node, minX, minY, maxX, maxY);
+            }
+            levels[level] = nodes;
+        }
+    }
+
+    private static void setBounds(int[] bounds, int node, int minX, int minY, int maxX, int maxY) {
+        bounds[node * 4] = minX;
+        bounds[node * 4 + 1] = minY;
+        bounds[node * 4 + 2] = maxX;
+        bounds[node * 4 + 3] = maxY;
+    }
+
+    /**
+     * Gets the number of points covered by this index.
+     *
+     * @return The number of points, the sequence had when the index was built.
+     */
+    int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Checks if the given coordinates are within <code>maxDistance</code> of
+     * the path connecting the points in the given range. The range must be
+     * covered by this index.
+     *
+     * @param points      The sequence this index was built from.
+     * @param from        The index of the first point (inclusive).
+     * @param to          The index of the last point (exclusive), at most {@link #getPointCount()}.
+     * @param x           The x-coordinate of the point to check.
+     * @param y           The y-coordinate of the point to check.
+     * @param maxDistance The maximum distance.
+     * @return Whether the given point is on the path.
+     */
+    boolean isOnPath(CoordinateSequence points, int from, int to, double x, double y, double maxDistance) {
+        if (to - from < 2) {
+            return false;
+        }
+        // Segment i connects the points i and i + 1
+        return isNearNode(points, levels.length - 1, 0, from, to - 1, x, y, maxDistance);
+    }
+
+    /**
+     * Finds the point on the path connecting the points in the given range,
+     * that is closest to the given coordinates, if it is within the given
+     * distance. The range must be covered by this index.
+     *
+     * @param points        The sequence this index was built from.
+     * @param from          The index of the first point (inclusive).
+     * @param to            The index of the last point (exclusive), at most {@link #getPointCount()}.
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if one is found.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if the path is not close enough.
+     */
+    double closestOnPath(CoordinateSequence points, int from, int to, double x, double y, double maxDistanceSq,
+                         @Nullable Point2D.Double closest) {
+        if (to - from < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return closestInNode(points, levels.length - 1, 0, from, to - 1, x, y, maxDistanceSq, closest);
+    }
+
+    /**
+     * Finds the closest point on the segments of a node, that are within the
+     * given range. Nodes further away than the closest point found so far are
+     * skipped.
+     *
+     * @param points        The sequence this index was built from.
+     * @param level         The level of the node, <code>0</code> for chunks.
+     * @param node          The index of the node within its level.
+     * @param firstSegment  The index of the first segment to check (inclusive).
+     * @param endSegment    The index after the last segment to check (exclusive).
+     * @param x             The x-coordinate to measure from.
+     * @param y             The y-coordinate to measure from.
+     * @param maxDistanceSq The square of the maximum distance.
+     * @param closest       Set to the closest point, if one is found.
+     * @return The square of the distance to the closest point, or
+     * {@link Double#POSITIVE_INFINITY} if no segment is close enough.
+     */
+    private double closestInNode(CoordinateSequence points, int level, int node, int firstSegment, int endSegment,
+                                 double x, double y, double maxDistanceSq, @Nullable Point2D.Double closest) {
+        int[] bounds = levels[level];
+        final double dx = Math.max(Math.max(bounds[node * 4] - x, x - bounds[node * 4 + 2]), 0);
+        final double dy = Math.max(Math.max(bounds[node * 4 + 1] - y, y - bounds[node * 4 + 3]), 0);
+        if (dx * dx + dy * dy > maxDistanceSq) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        final long span = span(level);
+        final int start = (int) Math.max(node * span, firstSegment);
+        final int end = (int) Math.min((node + 1) * span, endSegment);
+        if (level == 0) {
+            return points.closestOnSegments(start, end, x, y, maxDistanceSq, closest);
+        }
+
+        double found = Double.POSITIVE_INFINITY;
+        final long childSpan = span / FAN_OUT;
+        final int childCount = levels[level - 1].length / 4;
+        for (int child = node * FAN_OUT; child < Math.min((node + 1) * FAN_OUT, childCount); child++) {
+            if (child * childSpan < end && (child + 1) * childSpan > start) {
+                final double distanceSq = closestInNode(points, level - 1, child, start, end,
+                        x, y, maxDistanceSq, closest);
+                if (distanceSq <= maxDistanceSq) {
+                    found = maxDistanceSq = distanceSq;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of segments covered by each node of a level.
+     *
+     * @param level The level, <code>0</code> for chunks.
+     * @return The number of segments.
+     */
+    private static long span(int level) {
+        long span = CHUNK_SIZE;
+        for (int i = 0; i < level; i++) {
+            span *= FAN_OUT;
+        }
+        return span;
+    }
+
+    /**
+     * Checks the segments of a node, that are within the given range.
+     *
+     * @param points       The sequence this index was built from.
+     * @param level        The level of the node, <code>0</code> for chunks.
+     * @param node         The index of the node within its level.
+     * @param firstSegment The index of the first segment to check (inclusive).
+     * @param endSegment   The index after the last segment to check (exclusive).
+     * @param x            The x-coordinate of the point to check.
+     * @param y            The y-coordinate of the point to check.
+     * @param maxDistance  The maximum distance.
+     * @return Whether the given point is close to any of the segments.
+     */
+    private boolean isNearNode(CoordinateSequence points, int level, int node, int firstSegment, int endSegment,
+                               double x, double y, double maxDistance) {
+        int[] bounds = levels[level];
+        if (x < bounds[node * 4] - maxDistance || x > bounds[node * 4 + 2] + maxDistance
+                || y < bounds[node * 4 + 1] - maxDistance || y > bounds[node * 4 + 3] + maxDistance) {
+            return false;
+        }
+
+        final long span = span(level);
+        final int start = (int) Math.max(node * span, firstSegment);
+        final int end = (int) Math.min((node + 1) * span, endSegment);
+
+        if (level == 0) {
+            final double maxDistanceSq = maxDistance * maxDistance;
+            for (int i = start; i < end; i++) {
+                if (Line2D.ptSegDistSq(points.getX(i), points.getY(i),
+                        points.getX(i + 1), points.getY(i + 1), x, y) <= maxDistanceSq) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final long childSpan = span / FAN_OUT;
+        final int childCount = levels[level - 1].length / 4;
+        for (int child = node * FAN_OUT; child < Math.min((node + 1) * FAN_OUT, childCount); child++) {
+            if (child * childSpan < end && (child + 1) * childSpan > start
+                    && isNearNode(points, level - 1, child, start, end, x, y, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
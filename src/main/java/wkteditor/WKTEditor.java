@@ -2,18 +2,29 @@ package wkteditor;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import wkteditor.io.WKTReader;
+import wkteditor.index.HilbertCurve;
+import wkteditor.index.Neighbor;
+import wkteditor.index.RTree;
+import wkteditor.index.VertexHash;
+import wkteditor.io.*;
 import wkteditor.ui.DisplayOptions;
 import wkteditor.ui.WKTFrame;
 
+import javax.swing.*;
 import java.awt.*;
+import java.awt.geom.Point2D;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class WKTEditor {
     public static void main(String[] args) {
@@ -21,6 +32,22 @@ public class WKTEditor {
     }
 
     public static final String DEFAULT_FILE_NAME = "Unnamed Geometry.wkt";
+    private static final long NOTIFY_INTERVAL_MS = 200;
+    /**
+     * The journal is compacted into the file, when it grows beyond this size
+     * and {@value #COMPACT_JOURNAL_RATIO} of the size of the file.
+     */
+    private static final long COMPACT_JOURNAL_SIZE = 1 << 20;
+    private static final double COMPACT_JOURNAL_RATIO = 0.125;
+    /**
+     * The maximum distance between a point and the element it selects.
+     */
+    private static final int SELECT_DISTANCE = 3;
+    /**
+     * The default distance in pixels, within which added points snap to the
+     * elements.
+     */
+    private static final int DEFAULT_SNAP_TOLERANCE = 8;
 
     private DisplayOptions displayOpt;
     private CursorMode cursorMode;
@@ -29,18 +56,85 @@ public class WKTEditor {
 
     @NotNull
     private Set<WKTElement> selection;
-    private List<WKTElement> elements;
+    private boolean selectionShared;
+    private ElementList elements;
     @Nullable
     private File openFile;
     private boolean unsavedChanges;
+    private long rejectCount;
+    private List<WKTParseException> rejects;
+    private long roundedCount;
+    @Nullable
+    private IOException journalError;
+    @Nullable
+    private Loader loader;
+    private long modCount;
+    private ExecutorService saveExecutor;
+    private int pendingSaves;
+    private boolean elementsShared;
+    private Set<WKTElement> editableElements;
+    private int lastIndex;
+    private List<EditJournal.Operation> unsavedOperations;
+    private boolean journalValid;
+    private boolean columnarStorage;
+    private boolean spatialOrder;
+    private int compressIndex;
+    @Nullable
+    private Compressor compressor;
+    @Nullable
+    private Rectangle pendingCompressArea;
+    private int pendingCompressPoints;
+    @Nullable
+    private Rectangle idleCompressArea;
+    private long idleCompressModCount;
+    private long idleCompressSelectionCount;
+    private long selectionCount;
+    private RTree<WKTElement> index;
+    private Set<WKTElement> emptyElements;
+    private boolean snapping;
+    private int snapTolerance;
+    private VertexHash vertices;
 
     public WKTEditor() {
         displayOpt = new DisplayOptions();
         cursorMode = CursorMode.SELECT;
-        elements = new ArrayList<>();
+        elements = new ChunkedElementList();
         openFile = null;
         unsavedChanges = false;
+        rejectCount = 0;
+        rejects = Collections.emptyList();
+        roundedCount = 0;
+        journalError = null;
+        loader = null;
+        modCount = 0;
+        saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pendingSaves = 0;
+        elementsShared = false;
+        editableElements = Collections.newSetFromMap(new IdentityHashMap<>());
+        lastIndex = -1;
+        unsavedOperations = new ArrayList<>();
+        journalValid = false;
+        columnarStorage = false;
+        spatialOrder = false;
+        compressIndex = 0;
+        compressor = null;
+        pendingCompressArea = null;
+        pendingCompressPoints = 0;
+        idleCompressArea = null;
+        idleCompressModCount = 0;
+        idleCompressSelectionCount = 0;
+        selectionCount = 0;
+        index = new RTree<>();
+        emptyElements = new HashSet<>();
+        snapping = false;
+        snapTolerance = DEFAULT_SNAP_TOLERANCE;
+        vertices = new VertexHash();
         selection = new HashSet<>();
+        selectionShared = false;
 
         elementListeners = new ArrayList<>();
         selectionListeners = new ArrayList<>();
@@ -51,9 +145,34 @@ public class WKTEditor {
      * <b>Note</b>: This will delete all wkt data from ram. Unsaved changes will be gone!
      */
     private void unload() {
-        elements = new ArrayList<>();
+        elements = columnarStorage ? new ColumnarElementList() : new ChunkedElementList();
+        elementsShared = false;
+        editableElements.clear();
+        lastIndex = -1;
+        compressIndex = 0;
+        if (compressor != null) {
+            compressor.cancel(false);
+            compressor = null;
+        }
+        pendingCompressArea = null;
+        idleCompressArea = null;
+        index.clear();
+        emptyElements.clear();
+        vertices.clear();
         openFile = null;
         unsavedChanges = false;
+        modCount++;
+        unsavedOperations = new ArrayList<>();
+        journalValid = false;
+        rejectCount = 0;
+        rejects = Collections.emptyList();
+        roundedCount = 0;
+        journalError = null;
+
+        if (!selection.isEmpty()) {
+            clearSelection();
+            notifySelectionChanged();
+        }
     }
 
     /**
@@ -144,10 +263,59 @@ public class WKTEditor {
     /**
      * Gets the set of selected elements.
      *
-     * @return The set of selected elements.
+     * @return The set of selected elements, which can not be modified.
      */
     public Set<WKTElement> getSelection() {
-        return selection;
+        return Collections.unmodifiableSet(selection);
+    }
+
+    /**
+     * Removes all elements from the selection, without notifying the listeners.
+     */
+    private void clearSelection() {
+        if (selectionShared) {
+            selection = new HashSet<>();
+            selectionShared = false;
+        } else {
+            selection.clear();
+        }
+    }
+
+    /**
+     * Adds an element to the selection, without notifying the listeners.
+     *
+     * @param element The element to select.
+     */
+    private void addToSelection(WKTElement element) {
+        prepareSelectionEdit();
+        selection.add(element);
+    }
+
+    /**
+     * Replaces a selected element by an equal element, like a copy of it,
+     * without notifying the listeners.
+     *
+     * @param element     The element to replace.
+     * @param replacement The element to select instead.
+     */
+    private void replaceInSelection(WKTElement element, WKTElement replacement) {
+        if (selection.contains(element)) {
+            // The replacement is equal to the element, but the set keeps the element
+            prepareSelectionEdit();
+            selection.remove(element);
+            selection.add(replacement);
+        }
+    }
+
+    /**
+     * Prepares the selection for being changed. If a snapshot has been taken,
+     * the selection is shared with it, and is copied first.
+     */
+    private void prepareSelectionEdit() {
+        if (selectionShared) {
+            selection = new HashSet<>(selection);
+            selectionShared = false;
+        }
     }
 
     /**
@@ -166,15 +334,18 @@ public class WKTEditor {
     /**
      * Sets the wkt element that is currently being edited.
      *
-     * @param element The wkt element to select for editing.
+     * @param element The wkt element to select for editing, or
+     *                <code>null</code> to select nothing.
      */
-    private void setCurrentElement(WKTElement element) {
-        if (selection.size() == 1 && selection.contains(element)) {
+    private void setCurrentElement(@Nullable WKTElement element) {
+        if (element == null ? selection.isEmpty() : selection.size() == 1 && isSelected(element)) {
             return;
         }
 
-        selection.clear();
-        selection.add(element);
+        clearSelection();
+        if (element != null) {
+            addToSelection(element);
+        }
         notifySelectionChanged();
     }
 
@@ -189,7 +360,7 @@ public class WKTEditor {
         if (elem == null) {
             return;
         }
-        selection.clear();
+        clearSelection();
         notifySelectionChanged();
         onElementChanged();
     }
@@ -201,7 +372,7 @@ public class WKTEditor {
      * @see #endCurrentElement()
      */
     public void endCurrentSubElement() {
-        if (!cursorMode.hasSubElements()) {
+        if (isLoading() || !cursorMode.hasSubElements()) {
             return;
         }
 
@@ -210,52 +381,443 @@ public class WKTEditor {
             return;
         }
 
+        elem = prepareEdit(elem);
         elem.endSubElement();
+        updateIndex(elem);
+        unsavedOperations.add(EditJournal.endSubElement(indexOf(elem)));
         onElementChanged();
     }
 
     /**
-     * Opens the specified file.
+     * Opens the specified file. The file is loaded in the background, and the
+     * loaded elements are added to the document in batches, so the listeners
+     * are notified while loading. Editing is not possible until loading has
+     * finished. The file format is determined by the extension of the file,
+     * see {@link FileFormat}. Malformed elements in wkt files are skipped, see
+     * {@link #getRejectCount()}.
      *
      * @param file The file to open.
+     * @return The worker loading the file. It reports the loading progress and
+     * can be cancelled, in which case no file will be open.
      */
-    public void open(File file) {
+    public SwingWorker<Void, Void> open(File file) {
+        if (loader != null) {
+            loader.cancel(false);
+        }
+
         unload();
+        openFile = file;
+        loader = new Loader(file);
         notifyElementChanged();
 
-        try {
-            WKTReader wktReader = new WKTReader(file);
-            elements = wktReader.readElements();
-            wktReader.close();
+        loader.execute();
+        return loader;
+    }
 
-            openFile = file;
-        } catch (IOException exception) {
-            exception.printStackTrace();
-        }
-        notifyElementChanged();
+    /**
+     * Checks whether a file is currently being loaded.
+     *
+     * @return <code>true</code> if a file is being loaded.
+     * @see #open(File)
+     */
+    public boolean isLoading() {
+        return loader != null;
     }
 
     /**
-     * Save the edited wkt elements to the specified file.
+     * Save the edited wkt elements to the specified file. The file format is
+     * determined by the extension of the file, see {@link FileFormat}.
+     * <p>
+     * The file is saved in the background from a snapshot of the elements, so
+     * editing can continue while saving. Saves run one after another. The
+     * file is replaced only when all elements have been written, see
+     * {@link ParallelElementWriter}, and the changes count as saved only if
+     * nothing was edited in the meantime.
+     * <p>
+     * When saving to the open file again, only the edits since the last save
+     * are appended to its {@link EditJournal}. The journal is compacted into
+     * the file in the background, once it has grown large, unless coordinate
+     * values of the file have been rounded, see {@link #getRoundedCount()}.
      *
      * @param file The file to save the wkt elements to.
+     * @return The worker saving the file. It reports the progress and can be
+     * cancelled, in which case the file is left unchanged. If a file is being
+     * loaded, nothing is saved and <code>null</code> is returned.
      */
-    public void save(File file) {
+    @Nullable
+    public SwingWorker<Void, Void> save(File file) {
+        if (isLoading()) {
+            return null;
+        }
         endCurrentElement();
 
+        if (journalValid && file.equals(openFile)) {
+            Saver saver = new Saver(file, null, unsavedOperations, modCount);
+            unsavedOperations = new ArrayList<>();
+            submit(saver);
+            return saver;
+        }
+
         openFile = file;
-        try (FileOutputStream fos = new FileOutputStream(file)) {
+        journalValid = false;
+        // The saved file has no decimals, see wouldOverwriteDecimals(File)
+        roundedCount = 0;
+        return saveCompletely(file);
+    }
+
+    /**
+     * Saves a snapshot of all elements to the specified file, and deletes its
+     * journal.
+     *
+     * @param file The file to save the wkt elements to.
+     * @return The worker saving the file.
+     */
+    private Saver saveCompletely(File file) {
+        DocumentSnapshot snapshot = snapshot();
+        Saver saver = new Saver(file, snapshot.getElements(), Collections.emptyList(), snapshot.getVersion());
+        unsavedOperations = new ArrayList<>();
+        submit(saver);
+        return saver;
+    }
+
+    /**
+     * Queues a save, which counts as pending until it has run.
+     *
+     * @param saver The save to run.
+     */
+    private void submit(Saver saver) {
+        pendingSaves++;
+        saveExecutor.execute(() -> {
+            try {
+                saver.run();
+            } finally {
+                SwingUtilities.invokeLater(saver::finish);
+            }
+        });
+    }
+
+    /**
+     * Checks whether a file is currently being saved.
+     *
+     * @return <code>true</code> if a file is being saved.
+     * @see #save(File)
+     */
+    public boolean isSaving() {
+        return pendingSaves > 0;
+    }
+
+    /**
+     * Gets the index of an element in the document. The same element is
+     * usually edited again and again, so the index found last is checked
+     * first. Otherwise the document is searched from the end, where elements
+     * being edited usually are.
+     *
+     * @param element The element to search for.
+     * @return The index of the element, or <code>-1</code> if it is not part of the document.
+     */
+    private int indexOf(WKTElement element) {
+        if (lastIndex < 0 || lastIndex >= elements.size() || elements.get(lastIndex).getId() != element.getId()) {
+            lastIndex = elements.lastIndexOf(element);
+        }
+        return lastIndex;
+    }
+
+    /**
+     * Takes a snapshot of the current document. The snapshot shares the
+     * storage of the document and the selection, and elements and the
+     * selection are copied before they are changed, so it is taken in
+     * constant time and stays unchanged.
+     *
+     * @return The snapshot, which may be read by any thread.
+     */
+    public DocumentSnapshot snapshot() {
+        // Elements of the snapshot must be copied before they are edited
+        elementsShared = true;
+        editableElements.clear();
+        selectionShared = true;
+        return new DocumentSnapshot(modCount, elements.snapshot(), selection);
+    }
+
+    /**
+     * Prepares an element for being edited. If a snapshot has been taken, the
+     * element is replaced by a copy, unless it has been created or copied
+     * since the last snapshot, so the snapshots stay unchanged.
+     * <p>
+     * A {@link ColumnarElementList} only returns views of its elements, so
+     * the element to edit is stored in the document first.
+     *
+     * @param element The element that will be edited.
+     * @return The element to edit instead of the given one.
+     */
+    private WKTElement prepareEdit(WKTElement element) {
+        final int index = indexOf(element);
+        if (!elementsShared || editableElements.contains(element)) {
+            if (index >= 0 && elements.get(index) != element) {
+                elements.set(index, element);
+            }
+            return element;
+        }
+
+        WKTElement copy = element.copy();
+        if (index >= 0) {
+            elements.set(index, copy);
+        }
+        replaceInSelection(element, copy);
+        editableElements.add(copy);
+        return copy;
+    }
+
+    /**
+     * Compresses the elements, that are not in use, and decompresses the
+     * elements, that are in use again, see {@link WKTElement#compress()}.
+     * Elements are in use while they are selected or in the visible area.
+     * <p>
+     * The elements are packed and unpacked in the background from a snapshot
+     * of the document, see {@link Compressor}. Elements in use are
+     * decompressed first, wherever they are in the document, then the sweep
+     * over the other elements continues after the elements checked by the
+     * previous call. Only about the given number of points is packed or
+     * unpacked per call, so calling this regularly cycles through the whole
+     * document without blocking the user interface. The elements are
+     * replaced by their compressed or decompressed copies, which does not
+     * count as a change of the document.
+     * <p>
+     * While a previous call is still running, the latest visible area is
+     * kept and checked as soon as it has finished. Once a call has swept
+     * the whole document without finding anything to pack or unpack, calls
+     * do nothing until the document, the selection or the visible area
+     * change.
+     *
+     * @param visibleArea The visible area in wkt coordinates.
+     * @param maxPoints   The number of points to pack or unpack, after which the call ends.
+     */
+    public void compressUnusedElements(Rectangle visibleArea, int maxPoints) {
+        if (isLoading()) {
+            return;
+        }
+        if (compressor != null) {
+            pendingCompressArea = visibleArea;
+            pendingCompressPoints = maxPoints;
+            return;
+        }
+        if (visibleArea.equals(idleCompressArea) && modCount == idleCompressModCount
+                && selectionCount == idleCompressSelectionCount) {
+            return;
+        }
+
+        compressor = new Compressor(snapshot(), visibleArea, compressIndex, maxPoints);
+        compressor.execute();
+    }
+
+    /**
+     * Updates the spatial index after an element has been added or edited, or
+     * has been replaced by a copy.
+     *
+     * @param element The element, that is part of the document.
+     */
+    private void updateIndex(WKTElement element) {
+        // Remove first, so an equal element is replaced
+        emptyElements.remove(element);
+        if (element.isEmpty()) {
+            index.remove(element);
+            emptyElements.add(element);
+        } else {
+            index.update(element);
+        }
+    }
+
+    /**
+     * Visits the elements, whose bounds intersect the given area, and the
+     * empty elements, which have no bounds. The spatial index is used, so
+     * the other elements are skipped, except while loading, as the index is
+     * built once a file has been loaded.
+     *
+     * @param area    The area to search.
+     * @param visitor Called for each element, returns <code>false</code> to end the search.
+     */
+    private void searchElements(Rectangle area, Predicate<WKTElement> visitor) {
+        if (isLoading()) {
+            for (WKTElement element : elements) {
+                if ((element.isEmpty() || element.intersects(area)) && !visitor.test(element)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        for (WKTElement element : emptyElements) {
+            if (!visitor.test(element)) {
+                return;
+            }
+        }
+        index.search(area.x, area.y, area.x + area.width, area.y + area.height, visitor);
+    }
+
+    /**
+     * Visits the elements, whose bounds intersect the given area, to paint
+     * them. The elements are visited in the order of the document, unless
+     * spatial order is enabled and the file has been loaded. Then only the
+     * spatial index is searched, and the elements are visited along a
+     * {@link HilbertCurve}, so neighbouring elements are visited one after
+     * another.
+     * <p>
+     * Edited elements are moved within the index, so in spatial order the
+     * order of overlapping elements changes after edits. The selected
+     * elements, including the element being edited, are visited last, so
+     * they are always painted on top of the others.
+     *
+     * @param area   The area to search.
+     * @param action Called for each element.
+     * @see #setSpatialOrder(boolean)
+     */
+    public void forEachElementIn(Rectangle area, Consumer<WKTElement> action) {
+        if (!spatialOrder || isLoading()) {
+            for (WKTElement element : elements) {
+                if (element.intersects(area)) {
+                    action.accept(element);
+                }
+            }
+            return;
+        }
+
+        List<WKTElement> selected = new ArrayList<>();
+        index.search(area.x, area.y, area.x + area.width, area.y + area.height, element -> {
+            if (isSelected(element)) {
+                selected.add(element);
+            } else {
+                action.accept(element);
+            }
+            return true;
+        });
+        selected.forEach(action);
+    }
+
+    /**
+     * Checks whether elements are visited in spatial order.
+     *
+     * @return <code>true</code> if spatial order is enabled.
+     * @see #setSpatialOrder(boolean)
+     */
+    public boolean isSpatialOrder() {
+        return spatialOrder;
+    }
+
+    /**
+     * Sets whether elements are visited in spatial order, which is faster for
+     * large files, but paints overlapping elements in a different order, that
+     * changes as elements are edited. Selected elements are still painted on
+     * top. The spatial index of files opened afterwards is built along a
+     * {@link HilbertCurve}, see {@link #forEachElementIn(Rectangle, Consumer)}.
+     * Files are still saved in their original order.
+     *
+     * @param spatialOrder Whether to enable spatial order.
+     */
+    public void setSpatialOrder(boolean spatialOrder) {
+        this.spatialOrder = spatialOrder;
+    }
+
+    /**
+     * Checks whether added points snap to the vertices and lines of the
+     * elements.
+     *
+     * @return <code>true</code> if snapping is enabled.
+     * @see #snap(int, int)
+     */
+    public boolean isSnapping() {
+        return snapping;
+    }
+
+    /**
+     * Sets whether added points snap to the vertices and lines of the
+     * elements. While snapping is enabled, the vertices of all elements are
+     * kept in a {@link VertexHash}.
+     *
+     * @param snapping Whether to enable snapping.
+     * @see #snap(int, int)
+     */
+    public void setSnapping(boolean snapping) {
+        if (this.snapping == snapping) {
+            return;
+        }
+        this.snapping = snapping;
+
+        vertices.clear();
+        if (snapping && !isLoading()) {
             for (WKTElement element : elements) {
-                String wkt = element.toWKT();
-                wkt += "\n";
-                fos.write(wkt.getBytes(Charset.forName("UTF-8")));
+                element.forEachPoint(vertices::add);
             }
-            unsavedChanges = false;
-        } catch (IOException exception) {
-            exception.printStackTrace();
         }
     }
 
+    /**
+     * Gets the distance, within which added points snap to the elements.
+     *
+     * @return The distance in pixels on the screen.
+     */
+    public int getSnapTolerance() {
+        return snapTolerance;
+    }
+
+    /**
+     * Sets the distance, within which added points snap to the elements.
+     *
+     * @param snapTolerance The distance in pixels on the screen.
+     */
+    public void setSnapTolerance(int snapTolerance) {
+        this.snapTolerance = snapTolerance;
+    }
+
+    /**
+     * Finds the point, that a point added at the given coordinates snaps to.
+     * The closest vertex within the snap tolerance is preferred, and found
+     * in constant time with the {@link VertexHash}. Otherwise the closest
+     * point on the lines of the elements near the coordinates is used.
+     *
+     * @param x The x-coordinate of the point to snap.
+     * @param y The y-coordinate of the point to snap.
+     * @return The point to snap to, or <code>null</code> if snapping is
+     * disabled or no element is within the snap tolerance.
+     */
+    @Nullable
+    public Point snap(int x, int y) {
+        if (!snapping || isLoading()) {
+            return null;
+        }
+
+        final int tolerance = Math.max(displayOpt.getTransform().reverseZoom(snapTolerance), 1);
+        Point snapped = new Point();
+        if (vertices.findClosest(x, y, tolerance, snapped)) {
+            return snapped;
+        }
+
+        List<Neighbor<WKTElement>> nearest = nearest(x, y, 1, tolerance);
+        if (nearest.isEmpty()) {
+            return null;
+        }
+        snapped.setLocation(nearest.get(0).getX(), nearest.get(0).getY());
+        return snapped;
+    }
+
+    /**
+     * Checks whether documents are stored in a {@link ColumnarElementList}.
+     *
+     * @return <code>true</code> if documents use the columnar storage.
+     */
+    public boolean isColumnarStorage() {
+        return columnarStorage;
+    }
+
+    /**
+     * Sets whether documents are stored in a {@link ColumnarElementList},
+     * which needs less memory for large files. The storage is used for files
+     * opened afterwards.
+     *
+     * @param columnarStorage Whether to use the columnar storage.
+     */
+    public void setColumnarStorage(boolean columnarStorage) {
+        this.columnarStorage = columnarStorage;
+    }
+
     /**
      * Gets the file that is currently opened.
      *
@@ -266,6 +828,66 @@ public class WKTEditor {
         return openFile;
     }
 
+    /**
+     * Gets the number of malformed elements, that were skipped when the
+     * current file was opened.
+     *
+     * @return The number of skipped elements.
+     */
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    /**
+     * Gets the number of coordinate values of the current file, that had
+     * decimals and have been rounded to integers when it was opened. Saving
+     * the file completely would replace them by the rounded values, so the
+     * edits are only appended to its journal, which is not compacted then.
+     *
+     * @return The number of rounded values.
+     * @see #wouldOverwriteDecimals(File)
+     */
+    public long getRoundedCount() {
+        return roundedCount;
+    }
+
+    /**
+     * Checks whether saving to the given file would replace the coordinate
+     * values of the current file, that have decimals, by the rounded values,
+     * as the file has to be saved completely.
+     *
+     * @param file The file to save to.
+     * @return <code>true</code> if decimals of the current file would be lost.
+     * @see #getRoundedCount()
+     */
+    public boolean wouldOverwriteDecimals(File file) {
+        return roundedCount > 0 && file.equals(openFile) && !journalValid;
+    }
+
+    /**
+     * Gets the errors of the elements, that were skipped when the current file
+     * was opened. Only the first errors are kept, see {@link #getRejectCount()}
+     * for the total number.
+     *
+     * @return The errors of the skipped elements.
+     */
+    public List<WKTParseException> getRejects() {
+        return rejects;
+    }
+
+    /**
+     * Gets the error, that prevented the journal of the current file from
+     * being replayed when it was opened. The file is open without the edits
+     * in the journal then, and the next save replaces the journal.
+     *
+     * @return The error, or <code>null</code> if the journal has been replayed or there is none.
+     * @see EditJournal#replay(List, List)
+     */
+    @Nullable
+    public IOException getJournalError() {
+        return journalError;
+    }
+
     /**
      * Checks if there are changes to the currently open file, that have not yet been saved.
      *
@@ -276,7 +898,8 @@ public class WKTEditor {
     }
 
     /**
-     * Selects an element based on the given coordinates.
+     * Selects an element based on the given coordinates. The element closest
+     * to the coordinates is selected, see {@link #nearest(double, double, int, double)}.
      *
      * @param x The x-coordinate of the selection.
      * @param y The y-coordinate of the selection.
@@ -284,12 +907,97 @@ public class WKTEditor {
      * was selected.
      */
     public WKTElement getSelectedElement(int x, int y) {
+        List<Neighbor<WKTElement>> nearest = nearest(x, y, 1, SELECT_DISTANCE);
+        return nearest.isEmpty() ? null : nearest.get(0).getItem();
+    }
+
+    /**
+     * Finds the elements closest to the given coordinates, ranked by the
+     * distance to their closest point. The spatial index is searched best
+     * first, so only the elements near the coordinates are measured.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param k           The maximum number of elements to find.
+     * @param maxDistance The maximum distance of the elements.
+     * @return The closest elements, closest first, each with its closest point.
+     */
+    public List<Neighbor<WKTElement>> nearest(double x, double y, int k, double maxDistance) {
+        return nearest(x, y, k, maxDistance, WKTElement::getDistance);
+    }
+
+    /**
+     * Finds the vertex closest to the given coordinates. Unlike
+     * {@link #nearest(double, double, int, double)}, the lines connecting
+     * the vertices are not measured.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param maxDistance The maximum distance of the vertex.
+     * @return The closest vertex together with its element, or
+     * <code>null</code> if no vertex is within <code>maxDistance</code>.
+     */
+    @Nullable
+    public Neighbor<WKTElement> nearestVertex(double x, double y, double maxDistance) {
+        List<Neighbor<WKTElement>> nearest = nearest(x, y, 1, maxDistance, WKTEditor::getVertexDistance);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Finds the elements closest to the given coordinates with the given
+     * metric. While loading, the index is built afterwards, so all elements
+     * are measured.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param k           The maximum number of elements to find.
+     * @param maxDistance The maximum distance of the elements.
+     * @param metric      Measures the distance of an element.
+     * @return The closest elements, closest first.
+     */
+    private List<Neighbor<WKTElement>> nearest(double x, double y, int k, double maxDistance,
+                                               RTree.Metric<WKTElement> metric) {
+        if (!isLoading()) {
+            return index.nearest(x, y, k, maxDistance, metric);
+        }
+
+        List<Neighbor<WKTElement>> found = new ArrayList<>();
+        Point2D.Double closest = new Point2D.Double();
         for (WKTElement element : elements) {
-            if (element.isOnElement(x, y, 3.0)) {
-                return element;
+            final double distance = metric.distance(element, x, y, maxDistance, closest);
+            if (distance <= maxDistance) {
+                found.add(new Neighbor<>(element, distance, closest.x, closest.y));
             }
         }
-        return null;
+        found.sort(Comparator.comparingDouble(Neighbor::getDistance));
+        return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+    }
+
+    /**
+     * Measures the distance between the given coordinates and the closest
+     * vertex of an element.
+     *
+     * @param element     The element to measure.
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param maxDistance The maximum distance.
+     * @param closest     Set to the closest vertex, if one is found.
+     * @return The distance, or {@link Double#POSITIVE_INFINITY} if no vertex is within <code>maxDistance</code>.
+     */
+    private static double getVertexDistance(WKTElement element, double x, double y, double maxDistance,
+                                            Point2D.Double closest) {
+        double[] maxDistanceSq = {maxDistance * maxDistance};
+        boolean[] found = {false};
+        element.forEachPoint((vertexX, vertexY) -> {
+            final double dx = vertexX - x;
+            final double dy = vertexY - y;
+            if (dx * dx + dy * dy <= maxDistanceSq[0]) {
+                maxDistanceSq[0] = dx * dx + dy * dy;
+                closest.setLocation(vertexX, vertexY);
+                found[0] = true;
+            }
+        });
+        return found[0] ? Math.sqrt(maxDistanceSq[0]) : Double.POSITIVE_INFINITY;
     }
 
     /**
@@ -298,23 +1006,28 @@ public class WKTEditor {
      * @param selectionArea The area which contains all elements that will be selected.
      */
     public void updateSelection(Rectangle selectionArea) {
-        selection.clear();
-        for (WKTElement element : elements) {
+        clearSelection();
+        searchElements(selectionArea, element -> {
             if (element.isContainedBy(selectionArea)) {
-                selection.add(element);
+                addToSelection(element);
             }
-        }
+            return true;
+        });
         notifySelectionChanged();
     }
 
     /**
      * Adds the specified point to the currently edited element. If no element
-     * is being edited, a new one will be created.
+     * is being edited, a new one will be created. If snapping is enabled, the
+     * point is moved to the point it snaps to, see {@link #snap(int, int)}.
      *
      * @param x The x-coordinate of the point to add.
      * @param y The y-coordinate of the point to add.
      */
     public void addPoint(int x, int y) {
+        if (isLoading()) {
+            return;
+        }
         if (!cursorMode.isElement()) {
             // Select element
             WKTElement selected = getSelectedElement(x, y);
@@ -324,6 +1037,12 @@ public class WKTEditor {
             return;
         }
 
+        Point snapped = snap(x, y);
+        if (snapped != null) {
+            x = snapped.x;
+            y = snapped.y;
+        }
+
         WKTElement element = getCurrentElement();
         if (element != null && element.getClass() != cursorMode.getWktClass()) {
             System.err.println("Cursor mode changed without ending previous element!");
@@ -340,6 +1059,11 @@ public class WKTEditor {
             try {
                 element = cursorMode.getWktClass().getConstructor().newInstance();
                 elements.add(element);
+                lastIndex = elements.size() - 1;
+                unsavedOperations.add(EditJournal.newElement(element));
+                if (elementsShared) {
+                    editableElements.add(element);
+                }
                 setCurrentElement(element);
             } catch (InstantiationException | IllegalAccessException |
                     NoSuchMethodException | InvocationTargetException exception) {
@@ -349,7 +1073,106 @@ public class WKTEditor {
         }
 
         // Add point to current element
+        element = prepareEdit(element);
         element.add(x, y);
+        updateIndex(element);
+        if (snapping) {
+            vertices.add(x, y);
+        }
+        unsavedOperations.add(EditJournal.addPoint(indexOf(element), x, y));
+        onElementChanged();
+    }
+
+    /**
+     * Inserts a point into a line, or into a sub-polygon of a polygon of the
+     * document. Points inserted close to the previous insertion or removal
+     * take constant time, even on long lines.
+     *
+     * @param element The line or polygon.
+     * @param part    The index of the sub-polygon, or <code>0</code> for a line.
+     * @param index   The index of the inserted point within the part.
+     * @param x       The x-coordinate of the point to insert.
+     * @param y       The y-coordinate of the point to insert.
+     * @throws IndexOutOfBoundsException     If the part or the index does not exist.
+     * @throws UnsupportedOperationException If points can not be inserted into the element.
+     * @see WKTElement#insert(int, int, int, int)
+     */
+    public void insertPoint(WKTElement element, int part, int index, int x, int y) {
+        final int position = indexOf(element);
+        if (isLoading() || position < 0) {
+            return;
+        }
+
+        // The element given may be an older copy of the one in the document
+        WKTElement edited = prepareEdit(elements.get(position));
+        edited.insert(part, index, x, y);
+        updateIndex(edited);
+        if (snapping) {
+            vertices.add(x, y);
+        }
+        unsavedOperations.add(EditJournal.insertPoint(position, part, index, x, y));
+        onElementChanged();
+    }
+
+    /**
+     * Removes a range of points from a line, or from a sub-polygon of a
+     * polygon of the document, see {@link #insertPoint(WKTElement, int, int, int, int)}.
+     *
+     * @param element The line or polygon.
+     * @param part    The index of the sub-polygon, or <code>0</code> for a line.
+     * @param from    The index of the first point to remove within the part (inclusive).
+     * @param to      The index of the last point to remove within the part (exclusive).
+     * @throws IndexOutOfBoundsException     If the part or the range does not exist.
+     * @throws UnsupportedOperationException If points can not be removed from the element.
+     * @see WKTElement#remove(int, int, int)
+     */
+    public void removePoints(WKTElement element, int part, int from, int to) {
+        final int position = indexOf(element);
+        if (isLoading() || position < 0) {
+            return;
+        }
+
+        WKTElement edited = prepareEdit(elements.get(position));
+        if (snapping) {
+            // Checks the range, before any vertex is removed
+            edited.forEachPoint(part, from, to, vertices::remove);
+        }
+        edited.remove(part, from, to);
+        updateIndex(edited);
+        unsavedOperations.add(EditJournal.removePoints(position, part, from, to));
+        onElementChanged();
+    }
+
+    /**
+     * Deletes the selected elements from the document.
+     */
+    public void deleteSelection() {
+        if (isLoading() || selection.isEmpty()) {
+            return;
+        }
+
+        int[] indices = new int[selection.size()];
+        int count = 0;
+        for (int i = 0; i < elements.size() && count < indices.length; i++) {
+            if (isSelected(elements.get(i))) {
+                indices[count++] = i;
+            }
+        }
+
+        EditJournal.Operation delete = EditJournal.delete(Arrays.copyOf(indices, count));
+        delete.apply(elements);
+        lastIndex = -1;
+        unsavedOperations.add(delete);
+        for (WKTElement element : selection) {
+            index.remove(element);
+            emptyElements.remove(element);
+            if (snapping) {
+                element.forEachPoint(vertices::remove);
+            }
+        }
+
+        clearSelection();
+        notifySelectionChanged();
         onElementChanged();
     }
 
@@ -359,6 +1182,7 @@ public class WKTEditor {
      */
     private void onElementChanged() {
         unsavedChanges = true;
+        modCount++;
         notifyElementChanged();
     }
 
@@ -375,16 +1199,429 @@ public class WKTEditor {
      * Notifies the listeners that the selection has changed.
      */
     private void notifySelectionChanged() {
+        selectionCount++;
         for (SelectionChangedListener listener : selectionListeners) {
-            listener.onSelectionChanged(selection);
+            listener.onSelectionChanged(getSelection());
         }
     }
 
     /**
-     * Called when the program exits.
+     * Called when the program exits. Waits in the background for pending
+     * saves to finish, then exits. No more saves are started afterwards.
+     *
+     * @see #isSaving()
      */
     public void shutdown() {
-        System.exit(0);
+        saveExecutor.shutdown();
+        new Thread(() -> {
+            try {
+                saveExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                exception.printStackTrace();
+            }
+            System.exit(0);
+        }, "Shutdown").start();
+    }
+
+    /**
+     * Loads a file in the background. The loaded elements are collected in a
+     * list owned by the loader, and snapshots of it are shown while loading.
+     * The journal is replayed and the spatial index is built in the
+     * background as well, so the finished document only has to be swapped in
+     * on the event dispatch thread.
+     */
+    private class Loader extends SwingWorker<Void, Void> {
+        private final File file;
+        private final ElementList loaded;
+        private final boolean packInOrder;
+        private final boolean hashVertices;
+        private final RTree<WKTElement> loadedIndex;
+        private final Set<WKTElement> loadedEmptyElements;
+        private final VertexHash loadedVertices;
+        private boolean journalRead;
+        @Nullable
+        private IOException loadedJournalError;
+        private long lastNotification;
+
+        private Loader(File file) {
+            this.file = file;
+            loaded = columnarStorage ? new ColumnarElementList() : new ChunkedElementList();
+            packInOrder = spatialOrder;
+            hashVertices = snapping;
+            loadedIndex = new RTree<>();
+            loadedEmptyElements = new HashSet<>();
+            loadedVertices = new VertexHash();
+            journalRead = false;
+            loadedJournalError = null;
+            lastNotification = System.nanoTime();
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            if (FileFormat.of(file) == FileFormat.WKB) {
+                try (WKBReader wkbReader = new WKBReader(file)) {
+                    final long size = Math.max(file.length(), 1);
+                    wkbReader.readElements(batch -> publishBatch(batch, wkbReader.getBytesRead(), size));
+
+                    SwingUtilities.invokeLater(() -> {
+                        if (loader == this) {
+                            roundedCount = wkbReader.getRoundedCount();
+                        }
+                    });
+                }
+            } else {
+                try (ParallelWKTReader wktReader = new ParallelWKTReader(file)) {
+                    wktReader.setLenient(true);
+                    final long size = Math.max(wktReader.getSize(), 1);
+
+                    wktReader.readElements(batch -> publishBatch(batch, wktReader.getBytesRead(), size));
+
+                    SwingUtilities.invokeLater(() -> {
+                        if (loader == this) {
+                            rejectCount = wktReader.getRejectCount();
+                            rejects = wktReader.getRejects();
+                            roundedCount = wktReader.getRoundedCount();
+                        }
+                    });
+                }
+            }
+            showLoaded();
+
+            readJournal();
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            buildIndex();
+            return null;
+        }
+
+        /**
+         * Reads the journal of the file and replays it on the loaded
+         * elements. The whole journal is read and checked before any of it is
+         * replayed. A journal, that can not be read or replayed, is ignored
+         * and reported, see {@link #getJournalError()}, and the file is saved
+         * completely the next time.
+         */
+        private void readJournal() {
+            try {
+                List<EditJournal.Operation> operations = new EditJournal(file).read();
+                if (operations != null) {
+                    EditJournal.replay(operations, loaded);
+                }
+                journalRead = true;
+            } catch (IOException exception) {
+                loadedJournalError = exception;
+            }
+        }
+
+        /**
+         * Builds the spatial index of the loaded elements at once. The
+         * vertices are added to the {@link VertexHash}, if snapping was
+         * enabled when loading started.
+         * <p>
+         * In spatial order, the elements are sorted along a
+         * {@link HilbertCurve} and packed into the index in that order,
+         * instead of sorting them into tiles. The document keeps its order.
+         */
+        private void buildIndex() {
+            List<WKTElement> bounded = new ArrayList<>(loaded.size());
+            for (WKTElement element : loaded) {
+                if (element.isEmpty()) {
+                    loadedEmptyElements.add(element);
+                } else {
+                    bounded.add(element);
+                }
+                if (hashVertices) {
+                    element.forEachPoint(loadedVertices::add);
+                }
+            }
+
+            if (packInOrder) {
+                HilbertCurve.sort(bounded);
+                loadedIndex.loadInOrder(bounded);
+            } else {
+                loadedIndex.load(bounded);
+            }
+        }
+
+        /**
+         * Adds a batch of loaded elements and updates the progress. A
+         * snapshot of the loaded elements is shown at most every
+         * {@value #NOTIFY_INTERVAL_MS} ms, so the document is not repainted
+         * for every batch.
+         *
+         * @param batch     The loaded elements.
+         * @param bytesRead The number of bytes read so far.
+         * @param size      The size of the file.
+         * @throws CancellationException If loading has been cancelled.
+         */
+        private void publishBatch(List<WKTElement> batch, long bytesRead, long size) {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            loaded.addAll(batch);
+
+            final long now = System.nanoTime();
+            if (now - lastNotification > TimeUnit.MILLISECONDS.toNanos(NOTIFY_INTERVAL_MS)) {
+                lastNotification = now;
+                showLoaded();
+            }
+            setProgress((int) (bytesRead * 100 / size));
+        }
+
+        /**
+         * Shows a snapshot of the elements loaded so far. The snapshot is
+         * not changed by the loader, so the event dispatch thread can read it
+         * while loading continues.
+         */
+        private void showLoaded() {
+            ElementList snapshot = loaded.snapshot();
+            SwingUtilities.invokeLater(() -> {
+                if (loader == this) {
+                    elements = snapshot;
+                    notifyElementChanged();
+                }
+            });
+        }
+
+        @Override
+        protected void done() {
+            if (loader != this) {
+                return;
+            }
+            loader = null;
+
+            if (isCancelled()) {
+                unload();
+            } else {
+                try {
+                    get();
+                    elements = loaded;
+                    index = loadedIndex;
+                    emptyElements = loadedEmptyElements;
+                    journalValid = journalRead;
+                    journalError = loadedJournalError;
+                    if (snapping == hashVertices) {
+                        vertices = loadedVertices;
+                    } else if (snapping) {
+                        // Enabled while loading
+                        for (WKTElement element : elements) {
+                            element.forEachPoint(vertices::add);
+                        }
+                    }
+                } catch (InterruptedException | ExecutionException exception) {
+                    exception.printStackTrace();
+                    // Don't keep a partially loaded file, saving would truncate it
+                    unload();
+                }
+            }
+            notifyElementChanged();
+        }
+    }
+
+    /**
+     * Packs and unpacks the points of elements in the background, see
+     * {@link #compressUnusedElements(Rectangle, int)}. The elements are read
+     * from a snapshot, so the document can be edited meanwhile. The copies
+     * replace the elements on the event dispatch thread, unless an element
+     * has been edited or moved since the snapshot.
+     */
+    private class Compressor extends SwingWorker<Void, Void> {
+        private final DocumentSnapshot snapshot;
+        private final Rectangle visibleArea;
+        private final int maxPoints;
+        private final IntList indices;
+        private final List<WKTElement> originals;
+        private final List<WKTElement> replacements;
+        private final long selectionCount;
+        private int nextIndex;
+        private boolean swept;
+
+        private Compressor(DocumentSnapshot snapshot, Rectangle visibleArea, int startIndex, int maxPoints) {
+            this.snapshot = snapshot;
+            this.visibleArea = visibleArea;
+            this.maxPoints = maxPoints;
+            indices = new IntList();
+            originals = new ArrayList<>();
+            replacements = new ArrayList<>();
+            selectionCount = WKTEditor.this.selectionCount;
+            nextIndex = startIndex;
+            swept = false;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            List<WKTElement> elements = snapshot.getElements();
+            int points = 0;
+
+            // Elements in use are painted and picked, so they don't wait for the sweep
+            for (int i = 0; i < elements.size() && points < maxPoints && !isCancelled(); i++) {
+                WKTElement element = elements.get(i);
+                if (element.isCompressed() && isInUse(element)) {
+                    replace(i, element, element.copy());
+                    points += element.getPointCount();
+                }
+            }
+
+            int visited = 0;
+            for (; visited < elements.size() && points < maxPoints && !isCancelled(); visited++) {
+                if (nextIndex >= elements.size()) {
+                    nextIndex = 0;
+                }
+
+                WKTElement element = elements.get(nextIndex);
+                if (!element.isCompressed() && !isInUse(element)) {
+                    WKTElement compressed = element.compress();
+                    if (compressed != element) {
+                        replace(nextIndex, element, compressed);
+                        points += element.getPointCount();
+                    }
+                }
+                nextIndex++;
+            }
+            swept = visited == elements.size() && indices.isEmpty();
+            return null;
+        }
+
+        private boolean isInUse(WKTElement element) {
+            return snapshot.isSelected(element) || element.intersects(visibleArea);
+        }
+
+        private void replace(int index, WKTElement original, WKTElement replacement) {
+            indices.add(index);
+            originals.add(original);
+            replacements.add(replacement);
+        }
+
+        @Override
+        protected void done() {
+            if (compressor != this) {
+                return;
+            }
+            compressor = null;
+
+            try {
+                get();
+                final boolean edited = modCount != snapshot.getVersion();
+                for (int i = 0; i < indices.size(); i++) {
+                    final int index = indices.get(i);
+                    WKTElement original = originals.get(i);
+                    if (index >= elements.size()) {
+                        continue;
+                    }
+                    // A ColumnarElementList returns new views of its elements, so they are compared by id
+                    WKTElement current = elements.get(index);
+                    if (current != original && (edited || current.getId() != original.getId())) {
+                        // Edited or moved since the snapshot
+                        continue;
+                    }
+
+                    WKTElement replacement = replacements.get(i);
+                    elements.set(index, replacement);
+                    updateIndex(replacement);
+                    replaceInSelection(original, replacement);
+                    // Not part of any snapshot, so it can be edited in place
+                    editableElements.add(replacement);
+                }
+                compressIndex = nextIndex;
+                if (swept) {
+                    // Nothing to do, until the document or its use changes
+                    idleCompressArea = visibleArea;
+                    idleCompressModCount = snapshot.getVersion();
+                    idleCompressSelectionCount = selectionCount;
+                }
+            } catch (InterruptedException | ExecutionException exception) {
+                exception.printStackTrace();
+            }
+
+            if (pendingCompressArea != null) {
+                Rectangle area = pendingCompressArea;
+                pendingCompressArea = null;
+                compressUnusedElements(area, pendingCompressPoints);
+            }
+        }
+    }
+
+    /**
+     * Saves the document in the background. Either a snapshot of all
+     * elements is written to the file, or operations are appended to the
+     * journal of the file.
+     */
+    private class Saver extends SwingWorker<Void, Void> {
+        private final File file;
+        @Nullable
+        private final List<WKTElement> snapshot;
+        private final List<EditJournal.Operation> operations;
+        private final long snapshotModCount;
+        private boolean compact;
+
+        private Saver(File file, @Nullable List<WKTElement> snapshot, List<EditJournal.Operation> operations,
+                      long snapshotModCount) {
+            this.file = file;
+            this.snapshot = snapshot;
+            this.operations = operations;
+            this.snapshotModCount = snapshotModCount;
+            compact = false;
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            EditJournal journal = new EditJournal(file);
+            if (snapshot == null) {
+                journal.append(operations);
+                setProgress(100);
+                compact = journal.length() > Math.max(COMPACT_JOURNAL_SIZE, file.length() * COMPACT_JOURNAL_RATIO);
+                return null;
+            }
+
+            final int size = Math.max(snapshot.size(), 1);
+            new ParallelElementWriter(file).writeElements(snapshot, written -> {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                setProgress((int) ((long) written * 100 / size));
+            });
+            journal.delete();
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            final boolean current = file.equals(openFile);
+            if (!isCancelled()) {
+                try {
+                    get();
+                    if (snapshotModCount == modCount && current) {
+                        unsavedChanges = false;
+                    }
+                    if (current && snapshot != null) {
+                        journalValid = true;
+                    }
+                    // Compact only if the document is still the saved one
+                    if (compact && current && journalValid && unsavedOperations.isEmpty() && !isLoading()
+                            && roundedCount == 0 && !saveExecutor.isShutdown()) {
+                        saveCompletely(file);
+                    }
+                } catch (InterruptedException | ExecutionException exception) {
+                    exception.printStackTrace();
+                    if (current) {
+                        journalValid = false;
+                    }
+                }
+            } else if (current && snapshot == null) {
+                // The operations may or may not have been appended
+                journalValid = false;
+            }
+            notifyElementChanged();
+        }
+
+        /**
+         * Called when the snapshot is no longer used, which may be after
+         * {@link #done()} if the save has been cancelled.
+         */
+        private void finish() {
+            pendingSaves--;
+        }
     }
 
     /**
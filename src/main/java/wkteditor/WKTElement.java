@@ -1,15 +1,33 @@
 package wkteditor;
 
+import org.jetbrains.annotations.Nullable;
+import wkteditor.index.Bounded;
+import wkteditor.io.WKTWriter;
 import wkteditor.ui.DisplayOptions;
 
 import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * An element of the wkt file.
+ * An element of the wkt file. Each element has a unique id, which identifies
+ * it in the editor. Elements are equal if they have the same id, regardless
+ * of their points, so comparing and hashing elements takes constant time and
+ * does not change while an element is edited.
  */
-public abstract class WKTElement {
-    public WKTElement() {
+public abstract class WKTElement implements Bounded {
+    /**
+     * An id, that is never assigned to an element.
+     */
+    public static final int NO_ID = -1;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private int id;
 
+    public WKTElement() {
+        id = NEXT_ID.getAndIncrement();
     }
 
     public WKTElement(int x, int y) {
@@ -17,6 +35,40 @@ public abstract class WKTElement {
         add(x, y);
     }
 
+    /**
+     * Creates an element with an existing id. This is used for the views of
+     * elements stored in a {@link ColumnarElementList}.
+     *
+     * @param id The id of the stored element.
+     */
+    WKTElement(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the id of this element.
+     *
+     * @return The id, which is not negative.
+     */
+    public final int getId() {
+        return id;
+    }
+
+    /**
+     * Gives a copy of this element the id of this element, so it can take the
+     * place of this element.
+     *
+     * @param copy The copy of this element.
+     * @param <T>  The type of the element.
+     * @return The given copy.
+     * @see #copy()
+     */
+    protected final <T extends WKTElement> T keepId(T copy) {
+        WKTElement element = copy;
+        element.id = id;
+        return copy;
+    }
+
     /**
      * Add the specified point to this element.
      *
@@ -37,7 +89,26 @@ public abstract class WKTElement {
      *
      * @return The wkt string representing this element.
      */
-    public abstract String toWKT();
+    public String toWKT() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeWKT(builder);
+        } catch (IOException exception) {
+            // A string builder does not throw
+            throw new UncheckedIOException(exception);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the element as wkt to the given output. The coordinates are
+     * written with {@link WKTWriter#appendCoordinate(Appendable, int, int)},
+     * so no strings are created for them.
+     *
+     * @param out The output to write to.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public abstract void writeWKT(Appendable out) throws IOException;
 
     /**
      * Paints this element in the editor.
@@ -60,19 +131,160 @@ public abstract class WKTElement {
     public abstract boolean isOnElement(double x, double y, double maxDistance);
 
     /**
-     * Checks if this element is fully contained by the given rectangle.
+     * Finds the point of this element, that is closest to the given
+     * coordinates, if it is within <code>maxDistance</code>. The same parts of
+     * this element are measured as by {@link #isOnElement(double, double, double)}.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param maxDistance The maximum distance between the point and any part of
+     *                    this element.
+     * @param closest     Set to the closest point of this element, if one is found.
+     * @return The distance to the closest point, or {@link Double#POSITIVE_INFINITY}
+     * if no part of this element is within <code>maxDistance</code>.
+     */
+    public abstract double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest);
+
+    /**
+     * Passes all points of this element to the given consumer, in order.
+     *
+     * @param consumer The consumer of the points.
+     */
+    public abstract void forEachPoint(PointConsumer consumer);
+
+    /**
+     * Checks whether this element has no points, and therefore no bounds.
+     *
+     * @return <code>true</code> if this element is empty.
+     */
+    public abstract boolean isEmpty();
+
+    /**
+     * Gets the number of points of this element. The points are counted
+     * without being decompressed.
+     *
+     * @return The number of points, including the points of all sub elements.
+     */
+    public abstract int getPointCount();
+
+    /**
+     * Gets the smallest x-coordinate of this element. The bounds are kept up
+     * to date while the element is edited, so this takes constant time.
+     *
+     * @return The smallest x-coordinate, undefined if this element is empty.
+     */
+    public abstract int getMinX();
+
+    /**
+     * Gets the smallest y-coordinate of this element.
+     *
+     * @return The smallest y-coordinate, undefined if this element is empty.
+     * @see #getMinX()
+     */
+    public abstract int getMinY();
+
+    /**
+     * Gets the largest x-coordinate of this element.
+     *
+     * @return The largest x-coordinate, undefined if this element is empty.
+     * @see #getMinX()
+     */
+    public abstract int getMaxX();
+
+    /**
+     * Gets the largest y-coordinate of this element.
+     *
+     * @return The largest y-coordinate, undefined if this element is empty.
+     * @see #getMinX()
+     */
+    public abstract int getMaxY();
+
+    /**
+     * Checks if this element is fully contained by the given rectangle. Only
+     * the bounds of this element are compared, as the rectangle contains all
+     * points if it contains the bounds.
      *
      * @param rect The rectangle that should contain this element.
      * @return <code>true</code> if this element is in the rectangle.
      */
-    public abstract boolean isContainedBy(Rectangle rect);
+    public boolean isContainedBy(Rectangle rect) {
+        return isEmpty() || (rect.contains(getMinX(), getMinY()) && rect.contains(getMaxX(), getMaxY()));
+    }
+
+    /**
+     * Builds the smallest rectangle that fully contains this element. The
+     * rectangle is created for the caller and may be modified.
+     *
+     * @return A rectangle that fully contains this element, or
+     * <code>null</code> if this element is empty.
+     */
+    public Rectangle getContainingRect() {
+        if (isEmpty()) {
+            return null;
+        }
+        return new Rectangle(getMinX(), getMinY(), getMaxX() - getMinX(), getMaxY() - getMinY());
+    }
+
+    /**
+     * Checks if the given coordinates are within <code>maxDistance</code> of
+     * the bounds of this element. Points further away can not be on this
+     * element, so this is used to skip checking the parts of the element.
+     *
+     * @param x           The x-coordinate of the point to check.
+     * @param y           The y-coordinate of the point to check.
+     * @param maxDistance The maximum distance.
+     * @return <code>false</code> if the point is definitely not on this element.
+     */
+    protected boolean isNearBounds(double x, double y, double maxDistance) {
+        return !isEmpty()
+                && x >= getMinX() - maxDistance && x <= getMaxX() + maxDistance
+                && y >= getMinY() - maxDistance && y <= getMaxY() + maxDistance;
+    }
+
+    /**
+     * Checks if the bounds of this element intersect the given rectangle.
+     * Elements, that do not intersect a rectangle, have no points in it.
+     *
+     * @param rect The rectangle to check.
+     * @return <code>true</code> if this element may have points in the rectangle.
+     */
+    public boolean intersects(Rectangle rect) {
+        return !isEmpty()
+                && getMaxX() >= rect.x && getMinX() <= (long) rect.x + rect.width
+                && getMaxY() >= rect.y && getMinY() <= (long) rect.y + rect.height;
+    }
+
+    /**
+     * Creates a deep copy of this element, which can be modified without
+     * affecting this element. The copy has the same id, as it is meant to
+     * replace this element.
+     *
+     * @return The copy.
+     */
+    public abstract WKTElement copy();
+
+    /**
+     * Creates a copy of this element, that stores its points compressed. The
+     * copy has the same id, and is meant to replace this element while it is
+     * rarely used. It is decompressed temporarily whenever its points are
+     * read, and for good when it is modified. {@link #copy()} creates an
+     * uncompressed copy.
+     *
+     * @return The compressed copy, or this element if it can not be compressed.
+     */
+    public WKTElement compress() {
+        return this;
+    }
 
     /**
-     * Builds the smallest rectangle that fully contains this element.
+     * Checks whether the points of this element are compressed.
      *
-     * @return A rectangle that fully contains this element.
+     * @return <code>true</code> if the points are compressed.
+     * @see #compress()
      */
-    public abstract Rectangle getContainingRect();
+    public boolean isCompressed() {
+        return false;
+    }
 
     /**
      * Ends the current sub element and starts a new one.
@@ -80,4 +292,85 @@ public abstract class WKTElement {
     public void endSubElement() {
 
     }
+
+    /**
+     * Inserts a point into a part of this element. Only lines and polygons
+     * support this. The part of a polygon is one of its sub-polygons, and a
+     * line only has the part <code>0</code>.
+     * <p>
+     * Elements of a document are edited through the {@link WKTEditor}, as it
+     * has to copy an element shared with a snapshot first, and update its
+     * index and journal afterwards.
+     *
+     * @param part  The index of the part.
+     * @param index The index of the inserted point within the part.
+     * @param x     The x-coordinate of the point to insert.
+     * @param y     The y-coordinate of the point to insert.
+     * @throws IndexOutOfBoundsException     If the part or the index does not exist.
+     * @throws UnsupportedOperationException If points can not be inserted into this element.
+     * @see WKTEditor#insertPoint(WKTElement, int, int, int, int)
+     */
+    public void insert(int part, int index, int x, int y) {
+        throw new UnsupportedOperationException("Points can not be inserted into " + getClass().getSimpleName());
+    }
+
+    /**
+     * Removes a range of points from a part of this element, see
+     * {@link #insert(int, int, int, int)}.
+     *
+     * @param part The index of the part.
+     * @param from The index of the first point to remove within the part (inclusive).
+     * @param to   The index of the last point to remove within the part (exclusive).
+     * @throws IndexOutOfBoundsException     If the part or the range does not exist.
+     * @throws UnsupportedOperationException If points can not be removed from this element.
+     * @see WKTEditor#removePoints(WKTElement, int, int, int)
+     */
+    public void remove(int part, int from, int to) {
+        throw new UnsupportedOperationException("Points can not be removed from " + getClass().getSimpleName());
+    }
+
+    /**
+     * Passes a range of points of a part of this element to the given
+     * consumer, in order, see {@link #insert(int, int, int, int)}.
+     *
+     * @param part     The index of the part.
+     * @param from     The index of the first point within the part (inclusive).
+     * @param to       The index of the last point within the part (exclusive).
+     * @param consumer The consumer of the points.
+     * @throws IndexOutOfBoundsException     If the part or the range does not exist.
+     * @throws UnsupportedOperationException If this element has no parts.
+     */
+    public void forEachPoint(int part, int from, int to, PointConsumer consumer) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no parts");
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WKTElement)) {
+            return false;
+        }
+        return id == ((WKTElement) o).id;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Integer.hashCode(id);
+    }
+
+    /**
+     * A consumer of the coordinates of points.
+     */
+    @FunctionalInterface
+    public interface PointConsumer {
+        /**
+         * Called for each point.
+         *
+         * @param x The x-coordinate of the point.
+         * @param y The y-coordinate of the point.
+         */
+        void accept(int x, int y);
+    }
 }
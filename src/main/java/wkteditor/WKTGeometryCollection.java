@@ -0,0 +1,192 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.ui.DisplayOptions;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A wkt geometry collection. The collection consists of other elements, and
+ * can only be edited by adding whole elements. The elements must not be
+ * modified after they have been added, as the collection keeps their bounds.
+ */
+public class WKTGeometryCollection extends WKTElement {
+    private List<WKTElement> elements;
+    private boolean empty;
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    public WKTGeometryCollection() {
+        super();
+        elements = new ArrayList<>();
+        empty = true;
+    }
+
+    /**
+     * Collections can not be edited point by point, use
+     * {@link #add(WKTElement)} instead.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void add(int x, int y) {
+        throw new UnsupportedOperationException("Points can not be added to a geometry collection");
+    }
+
+    /**
+     * Adds an element to this collection.
+     *
+     * @param element The element to add.
+     */
+    public void add(WKTElement element) {
+        elements.add(element);
+        if (element.isEmpty()) {
+            return;
+        }
+
+        if (empty) {
+            minX = element.getMinX();
+            minY = element.getMinY();
+            maxX = element.getMaxX();
+            maxY = element.getMaxY();
+            empty = false;
+        } else {
+            minX = Math.min(minX, element.getMinX());
+            minY = Math.min(minY, element.getMinY());
+            maxX = Math.max(maxX, element.getMaxX());
+            maxY = Math.max(maxY, element.getMaxY());
+        }
+    }
+
+    @Override
+    public boolean canAdd() {
+        return false;
+    }
+
+    /**
+     * Gets the elements of this collection.
+     *
+     * @return The elements of this collection.
+     */
+    public List<WKTElement> getElements() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    @Override
+    public WKTGeometryCollection copy() {
+        WKTGeometryCollection copy = new WKTGeometryCollection();
+        for (WKTElement element : elements) {
+            copy.add(element.copy());
+        }
+        return keepId(copy);
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        if (elements.isEmpty()) {
+            out.append("GEOMETRYCOLLECTION EMPTY");
+            return;
+        }
+
+        out.append("GEOMETRYCOLLECTION (");
+        boolean first = true;
+        for (WKTElement element : elements) {
+            if (!first) {
+                out.append(", ");
+            }
+            element.writeWKT(out);
+            first = false;
+        }
+        out.append(')');
+    }
+
+    @Override
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        for (WKTElement element : elements) {
+            element.paint(g, opt);
+        }
+    }
+
+    @Override
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
+        }
+
+        for (WKTElement element : elements) {
+            if (element.isOnElement(x, y, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double found = Double.POSITIVE_INFINITY;
+        for (WKTElement element : elements) {
+            final double distance = element.getDistance(x, y, maxDistance, closest);
+            if (distance <= maxDistance) {
+                found = maxDistance = distance;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        for (WKTElement element : elements) {
+            element.forEachPoint(consumer);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public int getPointCount() {
+        int count = 0;
+        for (WKTElement element : elements) {
+            count += element.getPointCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getMinX() {
+        return minX;
+    }
+
+    @Override
+    public int getMinY() {
+        return minY;
+    }
+
+    @Override
+    public int getMaxX() {
+        return maxX;
+    }
+
+    @Override
+    public int getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public String toString() {
+        return toWKT();
+    }
+}
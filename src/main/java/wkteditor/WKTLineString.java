@@ -1,37 +1,94 @@
 package wkteditor;
 
+import org.jetbrains.annotations.Nullable;
 import wkteditor.ui.DisplayOptions;
-import wkteditor.ui.Transform;
 
 import java.awt.*;
-import java.awt.geom.Line2D;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.awt.geom.Point2D;
+import java.io.IOException;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
- * A wkt line.
+ * A wkt line. The points are stored in a {@link CoordinateSequence}.
  */
 public class WKTLineString extends WKTElement {
-    private LinkedList<WKTPoint> points;
+    private CoordinateSequence points;
 
     public WKTLineString() {
         super();
-        points = new LinkedList<>();
+        points = new CoordinateSequence();
+    }
+
+    /**
+     * Creates a line with an existing id, that uses the given storage.
+     *
+     * @param id     The id of the line.
+     * @param points The points of the line.
+     */
+    WKTLineString(int id, CoordinateSequence points) {
+        super(id);
+        this.points = points;
     }
 
     public WKTLineString(int x, int y) {
-        super(x, y);
+        this();
+        add(x, y);
     }
 
     @Override
     public void add(int x, int y) {
-        add(new WKTPoint(x, y));
+        points.add(x, y);
     }
 
     public void add(WKTPoint point) {
-        points.add(point);
+        add(point.getX(), point.getY());
+    }
+
+    /**
+     * Inserts a point into this line, which only has the part <code>0</code>.
+     * Points inserted close to the previous insertion or removal take
+     * constant time, even on long lines.
+     *
+     * @param part  The index of the part, which must be <code>0</code>.
+     * @param index The index of the inserted point.
+     * @param x     The x-coordinate of the point to insert.
+     * @param y     The y-coordinate of the point to insert.
+     * @throws IndexOutOfBoundsException If the part is not <code>0</code>, or the index is negative or greater
+     *                                   than the number of points.
+     */
+    @Override
+    public void insert(int part, int index, int x, int y) {
+        Objects.checkIndex(part, 1);
+        points.insert(index, x, y);
+    }
+
+    /**
+     * Removes a range of points from this line, see {@link #insert(int, int, int, int)}.
+     *
+     * @param part The index of the part, which must be <code>0</code>.
+     * @param from The index of the first point to remove (inclusive).
+     * @param to   The index of the last point to remove (exclusive).
+     * @throws IndexOutOfBoundsException If the part is not <code>0</code>, or the range is not within this line.
+     */
+    @Override
+    public void remove(int part, int from, int to) {
+        Objects.checkIndex(part, 1);
+        points.remove(from, to);
+    }
+
+    @Override
+    public void forEachPoint(int part, int from, int to, PointConsumer consumer) {
+        Objects.checkIndex(part, 1);
+        points.forEachPoint(from, to, consumer);
+    }
+
+    /**
+     * Gets the points of this line.
+     *
+     * @return The points of this line, which must not be modified.
+     */
+    public CoordinateSequence getPoints() {
+        return points;
     }
 
     @Override
@@ -40,103 +97,93 @@ public class WKTLineString extends WKTElement {
     }
 
     @Override
-    public String toWKT() {
-        return "LINESTRING ("
-                + points.stream()
-                .map(p -> p.getX() + " " + p.getY())
-                .collect(Collectors.joining(", "))
-                + ")";
+    public WKTLineString copy() {
+        WKTLineString copy = new WKTLineString();
+        copy.points = points.copy();
+        return keepId(copy);
     }
 
     @Override
-    public void paint(Graphics2D g, DisplayOptions opt) {
-        Transform transform = opt.getTransform();
-        Iterator<WKTPoint> iterator = points.iterator();
-        WKTPoint prev = null;
-
-        g.setStroke(new BasicStroke(opt.getLineWidth()));
-        while (iterator.hasNext()) {
-            WKTPoint cur = iterator.next();
-            if (prev != null) {
-                g.drawLine(transform.transformX(prev.getX()), transform.transformY(prev.getY()),
-                        transform.transformX(cur.getX()), transform.transformY(cur.getY()));
-            }
-            cur.paint(g, opt);
-
-            prev = cur;
+    public WKTLineString compress() {
+        CoordinateSequence compressed = points.compress();
+        if (compressed == points) {
+            return this;
         }
+        return new WKTLineString(getId(), compressed);
     }
 
     @Override
-    public boolean isOnElement(double x, double y, double maxDistance) {
-        final double maxDistanceSq = maxDistance * maxDistance;
-        WKTPoint prev = null;
-
-        for (WKTPoint cur : points) {
-            // Check if on current point
-            if (cur.isOnElement(x, y, maxDistance)) {
-                return true;
-            }
-
-            // Check line segment
-            if (prev != null) {
-                double distance = Line2D.ptSegDistSq(prev.getX(), prev.getY(), cur.getX(), cur.getY(), x, y);
-                if (distance <= maxDistanceSq) {
-                    return true;
-                }
-            }
-
-            prev = cur;
+    public boolean isCompressed() {
+        return points.isCompressed();
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        if (points.isEmpty()) {
+            out.append("LINESTRING EMPTY");
+            return;
         }
 
-        return false;
+        out.append("LINESTRING ");
+        points.writeWKT(out, 0, points.size(), false);
     }
 
     @Override
-    public boolean isContainedBy(Rectangle rect) {
-        for (WKTPoint point : points) {
-            if (!point.isContainedBy(rect)) {
-                return false;
-            }
-        }
-        return true;
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        points.paintPath(g, opt, 0, points.size(), false);
     }
 
     @Override
-    public Rectangle getContainingRect() {
-        if (points.isEmpty()) {
-            return null;
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
         }
 
-        int minX = Integer.MAX_VALUE;
-        int minY = Integer.MAX_VALUE;
-        int maxX = Integer.MIN_VALUE;
-        int maxY = Integer.MIN_VALUE;
+        return points.isOnPath(0, points.size(), x, y, maxDistance);
+    }
 
-        for (WKTPoint point : points) {
-            minX = Math.min(minX, point.getX());
-            minY = Math.min(minY, point.getY());
-            maxX = Math.max(maxX, point.getX());
-            maxY = Math.max(maxY, point.getY());
+    @Override
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
         }
-        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+
+        return Math.sqrt(points.closestOnPath(0, points.size(), x, y, maxDistance * maxDistance, closest));
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
-        }
-        WKTLineString that = (WKTLineString) o;
-        return Objects.equals(points, that.points);
+    public void forEachPoint(PointConsumer consumer) {
+        points.forEachPoint(consumer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    @Override
+    public int getPointCount() {
+        return points.size();
+    }
+
+    @Override
+    public int getMinX() {
+        return points.getMinX();
+    }
+
+    @Override
+    public int getMinY() {
+        return points.getMinY();
+    }
+
+    @Override
+    public int getMaxX() {
+        return points.getMaxX();
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(points);
+    public int getMaxY() {
+        return points.getMaxY();
     }
 
     @Override
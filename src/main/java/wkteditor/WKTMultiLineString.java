@@ -0,0 +1,219 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.ui.DisplayOptions;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+
+/**
+ * A wkt multi line string. The points of all lines are stored in a single
+ * {@link CoordinateSequence}, together with the index of the first point of
+ * each line.
+ */
+public class WKTMultiLineString extends WKTElement {
+    private CoordinateSequence points;
+    private IntList lineStarts;
+
+    public WKTMultiLineString() {
+        super();
+        points = new CoordinateSequence();
+        lineStarts = new IntList();
+    }
+
+    /**
+     * Creates a multi line string with an existing id, that uses the given storage.
+     *
+     * @param id         The id of the multi line string.
+     * @param points     The points of all lines.
+     * @param lineStarts The index of the first point of each line.
+     */
+    WKTMultiLineString(int id, CoordinateSequence points, IntList lineStarts) {
+        super(id);
+        this.points = points;
+        this.lineStarts = lineStarts;
+    }
+
+    /**
+     * Adds the point to the current line. If no line exists, a new one will be
+     * created.
+     *
+     * @param x The x-coordinate of the point to add.
+     * @param y The y-coordinate of the point to add.
+     */
+    @Override
+    public void add(int x, int y) {
+        if (lineStarts.isEmpty()) {
+            lineStarts.add(0);
+        }
+        points.add(x, y);
+    }
+
+    @Override
+    public boolean canAdd() {
+        return true;
+    }
+
+    @Override
+    public void endSubElement() {
+        lineStarts.add(points.size());
+    }
+
+    /**
+     * Gets the number of lines.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+        return lineStarts.size();
+    }
+
+    /**
+     * Gets the points of all lines of this element.
+     *
+     * @return The points, which must not be modified.
+     */
+    public CoordinateSequence getPoints() {
+        return points;
+    }
+
+    /**
+     * Gets the index of the first point of a line.
+     *
+     * @param line The index of the line.
+     * @return The index of the first point.
+     */
+    public int getStart(int line) {
+        return lineStarts.get(line);
+    }
+
+    /**
+     * Gets the index after the last point of a line.
+     *
+     * @param line The index of the line.
+     * @return The index after the last point.
+     */
+    public int getEnd(int line) {
+        return line + 1 < lineStarts.size() ? lineStarts.get(line + 1) : points.size();
+    }
+
+    @Override
+    public WKTMultiLineString copy() {
+        WKTMultiLineString copy = new WKTMultiLineString();
+        copy.points = points.copy();
+        copy.lineStarts = lineStarts.copy();
+        return keepId(copy);
+    }
+
+    @Override
+    public WKTMultiLineString compress() {
+        CoordinateSequence compressed = points.compress();
+        if (compressed == points) {
+            return this;
+        }
+        return new WKTMultiLineString(getId(), compressed, lineStarts.copy());
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return points.isCompressed();
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        CoordinateSequence points = this.points.decompressed();
+        boolean first = true;
+        for (int line = 0; line < lineStarts.size(); line++) {
+            if (getStart(line) == getEnd(line)) {
+                // A sub element that has just been started
+                continue;
+            }
+            out.append(first ? "MULTILINESTRING (" : ", ");
+            points.writeWKT(out, getStart(line), getEnd(line), false);
+            first = false;
+        }
+        out.append(first ? "MULTILINESTRING EMPTY" : ")");
+    }
+
+    @Override
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        CoordinateSequence points = this.points.decompressed();
+        for (int line = 0; line < lineStarts.size(); line++) {
+            points.paintPath(g, opt, getStart(line), getEnd(line), false);
+        }
+    }
+
+    @Override
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
+        }
+
+        CoordinateSequence points = this.points.decompressed();
+        for (int line = 0; line < lineStarts.size(); line++) {
+            if (points.isOnPath(getStart(line), getEnd(line), x, y, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        CoordinateSequence points = this.points.decompressed();
+        double maxDistanceSq = maxDistance * maxDistance;
+        double found = Double.POSITIVE_INFINITY;
+        for (int line = 0; line < lineStarts.size(); line++) {
+            final double distanceSq = points.closestOnPath(getStart(line), getEnd(line), x, y, maxDistanceSq, closest);
+            if (distanceSq <= maxDistanceSq) {
+                found = maxDistanceSq = distanceSq;
+            }
+        }
+        return Math.sqrt(found);
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        points.forEachPoint(consumer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    @Override
+    public int getPointCount() {
+        return points.size();
+    }
+
+    @Override
+    public int getMinX() {
+        return points.getMinX();
+    }
+
+    @Override
+    public int getMinY() {
+        return points.getMinY();
+    }
+
+    @Override
+    public int getMaxX() {
+        return points.getMaxX();
+    }
+
+    @Override
+    public int getMaxY() {
+        return points.getMaxY();
+    }
+
+    @Override
+    public String toString() {
+        return toWKT();
+    }
+}
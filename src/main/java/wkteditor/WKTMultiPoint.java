@@ -0,0 +1,154 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.ui.DisplayOptions;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+
+/**
+ * A wkt multi point. All points are stored in a single
+ * {@link CoordinateSequence}.
+ */
+public class WKTMultiPoint extends WKTElement {
+    private CoordinateSequence points;
+
+    public WKTMultiPoint() {
+        super();
+        points = new CoordinateSequence();
+    }
+
+    /**
+     * Creates a multi point with an existing id, that uses the given storage.
+     *
+     * @param id     The id of the multi point.
+     * @param points The points.
+     */
+    WKTMultiPoint(int id, CoordinateSequence points) {
+        super(id);
+        this.points = points;
+    }
+
+    @Override
+    public void add(int x, int y) {
+        points.add(x, y);
+    }
+
+    @Override
+    public boolean canAdd() {
+        return true;
+    }
+
+    /**
+     * Gets the points of this element.
+     *
+     * @return The points, which must not be modified.
+     */
+    public CoordinateSequence getPoints() {
+        return points;
+    }
+
+    @Override
+    public WKTMultiPoint copy() {
+        WKTMultiPoint copy = new WKTMultiPoint();
+        copy.points = points.copy();
+        return keepId(copy);
+    }
+
+    @Override
+    public WKTMultiPoint compress() {
+        CoordinateSequence compressed = points.compress();
+        if (compressed == points) {
+            return this;
+        }
+        return new WKTMultiPoint(getId(), compressed);
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return points.isCompressed();
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        if (points.isEmpty()) {
+            out.append("MULTIPOINT EMPTY");
+            return;
+        }
+
+        out.append("MULTIPOINT (");
+        // Decompress once for all points
+        CoordinateSequence points = this.points.decompressed();
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            points.writeWKT(out, i, i + 1, false);
+        }
+        out.append(')');
+    }
+
+    @Override
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        points.paintPoints(g, opt, 0, points.size());
+    }
+
+    @Override
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
+        }
+
+        return points.isOnPoints(0, points.size(), x, y, maxDistance);
+    }
+
+    @Override
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return Math.sqrt(points.closestOnPoints(0, points.size(), x, y, maxDistance * maxDistance, closest));
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        points.forEachPoint(consumer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    @Override
+    public int getPointCount() {
+        return points.size();
+    }
+
+    @Override
+    public int getMinX() {
+        return points.getMinX();
+    }
+
+    @Override
+    public int getMinY() {
+        return points.getMinY();
+    }
+
+    @Override
+    public int getMaxX() {
+        return points.getMaxX();
+    }
+
+    @Override
+    public int getMaxY() {
+        return points.getMaxY();
+    }
+
+    @Override
+    public String toString() {
+        return toWKT();
+    }
+}
@@ -0,0 +1,271 @@
+package wkteditor;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.ui.DisplayOptions;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+
+/**
+ * A wkt multi polygon. The points of all rings of all polygons are stored in
+ * a single {@link CoordinateSequence}, together with the index of the first
+ * point of each ring and the index of the first ring of each polygon. Like
+ * {@link WKTPolygon}, the rings are closed implicitly.
+ */
+public class WKTMultiPolygon extends WKTElement {
+    private CoordinateSequence points;
+    private IntList ringStarts;
+    private IntList polygonStarts;
+
+    public WKTMultiPolygon() {
+        super();
+        points = new CoordinateSequence();
+        ringStarts = new IntList();
+        polygonStarts = new IntList();
+    }
+
+    /**
+     * Creates a multi polygon with an existing id, that uses the given storage.
+     *
+     * @param id            The id of the multi polygon.
+     * @param points        The points of all rings.
+     * @param ringStarts    The index of the first point of each ring.
+     * @param polygonStarts The index of the first ring of each polygon.
+     */
+    WKTMultiPolygon(int id, CoordinateSequence points, IntList ringStarts, IntList polygonStarts) {
+        super(id);
+        this.points = points;
+        this.ringStarts = ringStarts;
+        this.polygonStarts = polygonStarts;
+    }
+
+    /**
+     * Adds the point to the current ring. If no polygon exists, a new one will
+     * be created.
+     *
+     * @param x The x-coordinate of the point to add.
+     * @param y The y-coordinate of the point to add.
+     */
+    @Override
+    public void add(int x, int y) {
+        if (polygonStarts.isEmpty()) {
+            endPolygon();
+        }
+        points.add(x, y);
+    }
+
+    @Override
+    public boolean canAdd() {
+        return true;
+    }
+
+    /**
+     * Ends the current ring and starts a new one in the current polygon.
+     */
+    @Override
+    public void endSubElement() {
+        if (polygonStarts.isEmpty()) {
+            endPolygon();
+        } else {
+            ringStarts.add(points.size());
+        }
+    }
+
+    /**
+     * Ends the current polygon and starts a new one.
+     */
+    public void endPolygon() {
+        polygonStarts.add(ringStarts.size());
+        ringStarts.add(points.size());
+    }
+
+    /**
+     * Gets the number of polygons.
+     *
+     * @return The number of polygons.
+     */
+    public int getPolygonCount() {
+        return polygonStarts.size();
+    }
+
+    /**
+     * Gets the points of all rings of this element.
+     *
+     * @return The points, which must not be modified.
+     */
+    public CoordinateSequence getPoints() {
+        return points;
+    }
+
+    /**
+     * Gets the index of the first ring of a polygon.
+     *
+     * @param polygon The index of the polygon.
+     * @return The index of the first ring.
+     */
+    public int getPolygonStart(int polygon) {
+        return polygonStarts.get(polygon);
+    }
+
+    /**
+     * Gets the index of the first point of a ring.
+     *
+     * @param ring The index of the ring.
+     * @return The index of the first point.
+     */
+    public int getRingStart(int ring) {
+        return ringStarts.get(ring);
+    }
+
+    /**
+     * Gets the index after the last point of a ring.
+     *
+     * @param ring The index of the ring.
+     * @return The index after the last point.
+     */
+    public int getRingEnd(int ring) {
+        return ring + 1 < ringStarts.size() ? ringStarts.get(ring + 1) : points.size();
+    }
+
+    /**
+     * Gets the index after the last ring of a polygon.
+     *
+     * @param polygon The index of the polygon.
+     * @return The index after the last ring.
+     */
+    public int getPolygonEnd(int polygon) {
+        return polygon + 1 < polygonStarts.size() ? polygonStarts.get(polygon + 1) : ringStarts.size();
+    }
+
+    @Override
+    public WKTMultiPolygon copy() {
+        WKTMultiPolygon copy = new WKTMultiPolygon();
+        copy.points = points.copy();
+        copy.ringStarts = ringStarts.copy();
+        copy.polygonStarts = polygonStarts.copy();
+        return keepId(copy);
+    }
+
+    @Override
+    public WKTMultiPolygon compress() {
+        CoordinateSequence compressed = points.compress();
+        if (compressed == points) {
+            return this;
+        }
+        return new WKTMultiPolygon(getId(), compressed, ringStarts.copy(), polygonStarts.copy());
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return points.isCompressed();
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        CoordinateSequence points = this.points.decompressed();
+        boolean firstPolygon = true;
+        for (int polygon = 0; polygon < polygonStarts.size(); polygon++) {
+            boolean firstRing = true;
+            for (int ring = getPolygonStart(polygon); ring < getPolygonEnd(polygon); ring++) {
+                if (getRingStart(ring) == getRingEnd(ring)) {
+                    // A sub element that has just been started
+                    continue;
+                }
+                if (firstRing) {
+                    out.append(firstPolygon ? "MULTIPOLYGON ((" : ", (");
+                    firstPolygon = false;
+                } else {
+                    out.append(", ");
+                }
+                points.writeWKT(out, getRingStart(ring), getRingEnd(ring), true);
+                firstRing = false;
+            }
+            if (!firstRing) {
+                out.append(')');
+            }
+        }
+        out.append(firstPolygon ? "MULTIPOLYGON EMPTY" : ")");
+    }
+
+    @Override
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        CoordinateSequence points = this.points.decompressed();
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            points.paintPath(g, opt, getRingStart(ring), getRingEnd(ring), true);
+        }
+    }
+
+    @Override
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
+        }
+
+        CoordinateSequence points = this.points.decompressed();
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            if (points.isOnPath(getRingStart(ring), getRingEnd(ring), x, y, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        CoordinateSequence points = this.points.decompressed();
+        double maxDistanceSq = maxDistance * maxDistance;
+        double found = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            final double distanceSq = points.closestOnPath(getRingStart(ring), getRingEnd(ring), x, y, maxDistanceSq, closest);
+            if (distanceSq <= maxDistanceSq) {
+                found = maxDistanceSq = distanceSq;
+            }
+        }
+        return Math.sqrt(found);
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        points.forEachPoint(consumer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    @Override
+    public int getPointCount() {
+        return points.size();
+    }
+
+    @Override
+    public int getMinX() {
+        return points.getMinX();
+    }
+
+    @Override
+    public int getMinY() {
+        return points.getMinY();
+    }
+
+    @Override
+    public int getMaxX() {
+        return points.getMaxX();
+    }
+
+    @Override
+    public int getMaxY() {
+        return points.getMaxY();
+    }
+
+    @Override
+    public String toString() {
+        return toWKT();
+    }
+}
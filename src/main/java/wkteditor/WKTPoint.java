@@ -1,10 +1,13 @@
 package wkteditor;
 
+import org.jetbrains.annotations.Nullable;
+import wkteditor.io.WKTWriter;
 import wkteditor.ui.DisplayOptions;
 import wkteditor.ui.Transform;
 
 import java.awt.*;
-import java.util.Objects;
+import java.awt.geom.Point2D;
+import java.io.IOException;
 
 /**
  * A wkt point.
@@ -21,6 +24,19 @@ public class WKTPoint extends WKTElement {
         super(x, y);
     }
 
+    /**
+     * Creates a point with an existing id.
+     *
+     * @param id The id of the point.
+     * @param x  The x-coordinate of the point.
+     * @param y  The y-coordinate of the point.
+     */
+    WKTPoint(int id, int x, int y) {
+        super(id);
+        this.x = x;
+        this.y = y;
+    }
+
     @Override
     public void add(int x, int y) {
         this.x = x;
@@ -69,8 +85,15 @@ public class WKTPoint extends WKTElement {
     }
 
     @Override
-    public String toWKT() {
-        return "POINT (" + x + " " + y + ")";
+    public WKTPoint copy() {
+        return keepId(new WKTPoint(x, y));
+    }
+
+    @Override
+    public void writeWKT(Appendable out) throws IOException {
+        out.append("POINT (");
+        WKTWriter.appendCoordinate(out, x, y);
+        out.append(')');
     }
 
     @Override
@@ -89,30 +112,55 @@ public class WKTPoint extends WKTElement {
     }
 
     @Override
-    public boolean isContainedBy(Rectangle rect) {
-        return rect.contains(x, y);
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        final double distance = Math.hypot(this.x - x, this.y - y);
+        if (distance > maxDistance) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (closest != null) {
+            closest.setLocation(this.x, this.y);
+        }
+        return distance;
     }
 
     @Override
-    public Rectangle getContainingRect() {
-        return new Rectangle(x, y, 0, 0);
+    public void forEachPoint(PointConsumer consumer) {
+        consumer.accept(x, y);
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
-        }
-        WKTPoint wktPoint = (WKTPoint) o;
-        return x == wktPoint.x && y == wktPoint.y;
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public int getPointCount() {
+        return 1;
+    }
+
+    @Override
+    public int getMinX() {
+        return x;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(x, y);
+    public int getMinY() {
+        return y;
+    }
+
+    @Override
+    public int getMaxX() {
+        return x;
+    }
+
+    @Override
+    public int getMaxY() {
+        return y;
+    }
+
+    @Override
+    public boolean isContainedBy(Rectangle rect) {
+        return rect.contains(x, y);
     }
 
     @Override
@@ -1,29 +1,48 @@
 package wkteditor;
 
+import org.jetbrains.annotations.Nullable;
 import wkteditor.ui.DisplayOptions;
-import wkteditor.ui.Transform;
 
 import java.awt.*;
-import java.awt.geom.Line2D;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.awt.geom.Point2D;
+import java.io.IOException;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
- * A wkt polygon.
+ * A wkt polygon. The points of all sub-polygons are stored in a single
+ * {@link CoordinateSequence}, together with the index of the first point of
+ * each sub-polygon. The sub-polygons are not closed, their first point is not
+ * repeated at the end.
  */
 public class WKTPolygon extends WKTElement {
-    private LinkedList<LinkedList<WKTPoint>> subPolygons;
+    private CoordinateSequence points;
+    private IntList ringStarts;
 
     public WKTPolygon() {
         super();
-        subPolygons = new LinkedList<>();
+        points = new CoordinateSequence();
+        ringStarts = new IntList();
+    }
+
+    /**
+     * Creates a polygon with an existing id, that uses the given storage.
+     *
+     * @param id         The id of the polygon.
+     * @param points     The points of all sub-polygons.
+     * @param ringStarts The index of the first point of each sub-polygon.
+     */
+    WKTPolygon(int id, CoordinateSequence points, IntList ringStarts) {
+        super(id);
+        this.points = points;
+        this.ringStarts = ringStarts;
     }
 
     @Override
     public void add(int x, int y) {
-        add(new WKTPoint(x, y));
+        if (ringStarts.isEmpty()) {
+            ringStarts.add(0);
+        }
+        points.add(x, y);
     }
 
     @Override
@@ -38,158 +57,220 @@ public class WKTPolygon extends WKTElement {
      * @param p The point to add.
      */
     public void add(WKTPoint p) {
-        LinkedList<WKTPoint> subPolygon;
-        if (subPolygons.isEmpty()) {
-            subPolygon = new LinkedList<>();
-            subPolygons.add(subPolygon);
-        } else {
-            subPolygon = subPolygons.getLast();
-        }
-
-        subPolygon.add(p);
+        add(p.getX(), p.getY());
     }
 
     @Override
     public void endSubElement() {
-        subPolygons.add(new LinkedList<>());
+        ringStarts.add(points.size());
+    }
+
+    /**
+     * Gets the number of sub-polygons.
+     *
+     * @return The number of sub-polygons.
+     */
+    public int getRingCount() {
+        return ringStarts.size();
+    }
+
+    /**
+     * Gets the points of all sub-polygons of this polygon.
+     *
+     * @return The points, which must not be modified.
+     */
+    public CoordinateSequence getPoints() {
+        return points;
+    }
+
+    /**
+     * Gets the index of the first point of a sub-polygon.
+     *
+     * @param ring The index of the sub-polygon.
+     * @return The index of the first point.
+     */
+    public int getRingStart(int ring) {
+        return ringStarts.get(ring);
+    }
+
+    /**
+     * Gets the index after the last point of a sub-polygon.
+     *
+     * @param ring The index of the sub-polygon.
+     * @return The index after the last point.
+     */
+    public int getRingEnd(int ring) {
+        return ring + 1 < ringStarts.size() ? ringStarts.get(ring + 1) : points.size();
     }
 
+    /**
+     * Inserts a point into a sub-polygon. The points of all sub-polygons are
+     * stored in one {@link CoordinateSequence}, so points inserted close to
+     * the previous insertion or removal take constant time, while the starts
+     * of the following sub-polygons are moved.
+     *
+     * @param ring  The index of the sub-polygon.
+     * @param index The index of the inserted point within the sub-polygon.
+     * @param x     The x-coordinate of the point to insert.
+     * @param y     The y-coordinate of the point to insert.
+     * @throws IndexOutOfBoundsException If the sub-polygon or the index does not exist.
+     */
     @Override
-    public String toWKT() {
-        return "POLYGON (" +
-                subPolygons.stream()
-                        .map(subPoly -> {
-                            String result = "(";
-                            result += subPoly.stream()
-                                    .map(p -> p.getX() + " " + p.getY())
-                                    .collect(Collectors.joining(", "));
-                            if (!subPoly.isEmpty()) {
-                                WKTPoint first = subPoly.getFirst();
-                                result += ", " + first.getX() + " " + first.getY();
-                            }
-                            result += ")";
-                            return result;
-                        }).collect(Collectors.joining(", ")) +
-                ")";
+    public void insert(int ring, int index, int x, int y) {
+        Objects.checkIndex(ring, getRingCount());
+        Objects.checkIndex(index, getRingEnd(ring) - getRingStart(ring) + 1);
+        points.insert(getRingStart(ring) + index, x, y);
+        moveRingStarts(ring + 1, 1);
     }
 
+    /**
+     * Removes a range of points from a sub-polygon, see {@link #insert(int, int, int, int)}.
+     *
+     * @param ring The index of the sub-polygon.
+     * @param from The index of the first point to remove within the sub-polygon (inclusive).
+     * @param to   The index of the last point to remove within the sub-polygon (exclusive).
+     * @throws IndexOutOfBoundsException If the sub-polygon or the range does not exist.
+     */
     @Override
-    public void paint(Graphics2D g, DisplayOptions opt) {
-        BasicStroke strokeNormal = new BasicStroke(opt.getLineWidth());
-        BasicStroke strokeDashed = new BasicStroke(opt.getLineWidth(),
-                BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0.0f,
-                new float[]{opt.getLineWidth() * 2.0f}, 0.0f);
-        Transform transform = opt.getTransform();
-
-        Iterator<LinkedList<WKTPoint>> subPolyIterator = subPolygons.iterator();
-        while (subPolyIterator.hasNext()) {
-            LinkedList<WKTPoint> subPoly = subPolyIterator.next();
-
-            Iterator<WKTPoint> pointIterator = subPoly.iterator();
-            WKTPoint prev = null;
-
-            g.setStroke(strokeNormal);
-            while (pointIterator.hasNext()) {
-                WKTPoint cur = pointIterator.next();
-                if (prev != null) {
-                    g.drawLine(transform.transformX(prev.getX()), transform.transformY(prev.getY()),
-                            transform.transformX(cur.getX()), transform.transformY(cur.getY()));
-                }
-                cur.paint(g, opt);
-
-                prev = cur;
-            }
+    public void remove(int ring, int from, int to) {
+        Objects.checkIndex(ring, getRingCount());
+        Objects.checkFromToIndex(from, to, getRingEnd(ring) - getRingStart(ring));
+        points.remove(getRingStart(ring) + from, getRingStart(ring) + to);
+        moveRingStarts(ring + 1, from - to);
+    }
 
-            if (subPoly.size() > 2) {
-                g.setStroke(strokeDashed);
-                WKTPoint first = subPoly.getFirst();
-                WKTPoint last = subPoly.getLast();
+    @Override
+    public void forEachPoint(int ring, int from, int to, PointConsumer consumer) {
+        Objects.checkIndex(ring, getRingCount());
+        Objects.checkFromToIndex(from, to, getRingEnd(ring) - getRingStart(ring));
+        points.forEachPoint(getRingStart(ring) + from, getRingStart(ring) + to, consumer);
+    }
 
-                g.drawLine(transform.transformX(first.getX()), transform.transformY(first.getY()),
-                        transform.transformX(last.getX()), transform.transformY(last.getY()));
-            }
+    /**
+     * Moves the starts of the sub-polygons after points have been inserted or
+     * removed.
+     *
+     * @param firstRing The index of the first sub-polygon to move.
+     * @param distance  The number of points to move the starts by.
+     */
+    private void moveRingStarts(int firstRing, int distance) {
+        for (int ring = firstRing; ring < ringStarts.size(); ring++) {
+            ringStarts.set(ring, ringStarts.get(ring) + distance);
         }
+    }
 
-        g.setStroke(strokeNormal);
+    @Override
+    public WKTPolygon copy() {
+        WKTPolygon copy = new WKTPolygon();
+        copy.points = points.copy();
+        copy.ringStarts = ringStarts.copy();
+        return keepId(copy);
     }
 
     @Override
-    public boolean isOnElement(double x, double y, double maxDistance) {
-        final double maxDistanceSq = maxDistance * maxDistance;
-
-        for (LinkedList<WKTPoint> subPoly : subPolygons) {
-            WKTPoint prev = null;
-
-            for (WKTPoint cur : subPoly) {
-                // Check if on current point
-                if (cur.isOnElement(x, y, maxDistance)) {
-                    return true;
-                }
-
-                // Check line segment
-                if (prev != null) {
-                    double distance = Line2D.ptSegDistSq(prev.getX(), prev.getY(), cur.getX(), cur.getY(), x, y);
-                    if (distance <= maxDistanceSq) {
-                        return true;
-                    }
-                }
-
-                prev = cur;
-            }
+    public WKTPolygon compress() {
+        CoordinateSequence compressed = points.compress();
+        if (compressed == points) {
+            return this;
         }
+        return new WKTPolygon(getId(), compressed, ringStarts.copy());
+    }
 
-        return false;
+    @Override
+    public boolean isCompressed() {
+        return points.isCompressed();
     }
 
     @Override
-    public boolean isContainedBy(Rectangle rect) {
-        for (LinkedList<WKTPoint> subPoly : subPolygons) {
-            for (WKTPoint point : subPoly) {
-                if (!point.isContainedBy(rect)) {
-                    return false;
-                }
+    public void writeWKT(Appendable out) throws IOException {
+        CoordinateSequence points = this.points.decompressed();
+        boolean first = true;
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            if (getRingStart(ring) == getRingEnd(ring)) {
+                // A sub element that has just been started
+                continue;
             }
+            out.append(first ? "POLYGON (" : ", ");
+            points.writeWKT(out, getRingStart(ring), getRingEnd(ring), true);
+            first = false;
+        }
+        out.append(first ? "POLYGON EMPTY" : ")");
+    }
+
+    @Override
+    public void paint(Graphics2D g, DisplayOptions opt) {
+        CoordinateSequence points = this.points.decompressed();
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            points.paintPath(g, opt, getRingStart(ring), getRingEnd(ring), true);
         }
-        return true;
     }
 
     @Override
-    public Rectangle getContainingRect() {
-        if (subPolygons.isEmpty()) {
-            return null;
+    public boolean isOnElement(double x, double y, double maxDistance) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return false;
         }
 
-        int minX = Integer.MAX_VALUE;
-        int minY = Integer.MAX_VALUE;
-        int maxX = Integer.MIN_VALUE;
-        int maxY = Integer.MIN_VALUE;
-
-        for (LinkedList<WKTPoint> subPoly : subPolygons) {
-            for (WKTPoint point : subPoly) {
-                minX = Math.min(minX, point.getX());
-                minY = Math.min(minY, point.getY());
-                maxX = Math.max(maxX, point.getX());
-                maxY = Math.max(maxY, point.getY());
+        CoordinateSequence points = this.points.decompressed();
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            if (points.isOnPath(getRingStart(ring), getRingEnd(ring), x, y, maxDistance)) {
+                return true;
             }
         }
-        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        return false;
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
+    public double getDistance(double x, double y, double maxDistance, @Nullable Point2D.Double closest) {
+        if (!isNearBounds(x, y, maxDistance)) {
+            return Double.POSITIVE_INFINITY;
         }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
+
+        CoordinateSequence points = this.points.decompressed();
+        double maxDistanceSq = maxDistance * maxDistance;
+        double found = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring < ringStarts.size(); ring++) {
+            final double distanceSq = points.closestOnPath(getRingStart(ring), getRingEnd(ring), x, y, maxDistanceSq, closest);
+            if (distanceSq <= maxDistanceSq) {
+                found = maxDistanceSq = distanceSq;
+            }
         }
-        WKTPolygon that = (WKTPolygon) o;
-        return Objects.equals(subPolygons, that.subPolygons);
+        return Math.sqrt(found);
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        points.forEachPoint(consumer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    @Override
+    public int getPointCount() {
+        return points.size();
+    }
+
+    @Override
+    public int getMinX() {
+        return points.getMinX();
+    }
+
+    @Override
+    public int getMinY() {
+        return points.getMinY();
+    }
+
+    @Override
+    public int getMaxX() {
+        return points.getMaxX();
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(subPolygons);
+    public int getMaxY() {
+        return points.getMaxY();
     }
 
     @Override
@@ -0,0 +1,35 @@
+package wkteditor.index;
+
+/**
+ * Something with rectangular bounds, that can be stored in an
+ * {@link RTree}. The bounds include their edges.
+ */
+public interface Bounded {
+    /**
+     * Gets the smallest x-coordinate.
+     *
+     * @return The smallest x-coordinate.
+     */
+    int getMinX();
+
+    /**
+     * Gets the smallest y-coordinate.
+     *
+     * @return The smallest y-coordinate.
+     */
+    int getMinY();
+
+    /**
+     * Gets the largest x-coordinate.
+     *
+     * @return The largest x-coordinate.
+     */
+    int getMaxX();
+
+    /**
+     * Gets the largest y-coordinate.
+     *
+     * @return The largest y-coordinate.
+     */
+    int getMaxY();
+}
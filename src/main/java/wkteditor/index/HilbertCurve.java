@@ -0,0 +1,93 @@
+package wkteditor.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orders items along a Hilbert curve. The curve passes through all cells of
+ * a square grid, and cells close on the curve are close in the plane, so
+ * items sorted along the curve are near their neighbours in the list as well.
+ */
+public final class HilbertCurve {
+    /**
+     * The number of bits per coordinate, the grid has 2<sup>{@value}</sup>
+     * cells in each direction.
+     */
+    private static final int ORDER = 15;
+    private static final int SIZE = 1 << ORDER;
+
+    private HilbertCurve() {
+    }
+
+    /**
+     * Gets the position of a cell on the curve.
+     *
+     * @param x The x-coordinate of the cell, from <code>0</code> to 2<sup>{@value #ORDER}</sup> - 1.
+     * @param y The y-coordinate of the cell, from <code>0</code> to 2<sup>{@value #ORDER}</sup> - 1.
+     * @return The position on the curve, from <code>0</code> to 2<sup>30</sup> - 1.
+     */
+    public static long index(int x, int y) {
+        long index = 0;
+        for (int s = SIZE / 2; s > 0; s /= 2) {
+            final int rx = (x & s) != 0 ? 1 : 0;
+            final int ry = (y & s) != 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant, so the curve continues in it
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = SIZE - 1 - x;
+                    y = SIZE - 1 - y;
+                }
+                final int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sorts items along the curve by the centers of their bounds. The grid
+     * is laid over the bounds of all items, so the order is as fine as
+     * possible for any range of coordinates. The positions are sorted as
+     * primitive values, with the index of their item in the lower bits.
+     *
+     * @param items The items to sort.
+     * @param <T>   The type of the items.
+     */
+    public static <T extends Bounded> void sort(List<T> items) {
+        if (items.size() < 2) {
+            return;
+        }
+
+        long minX = Long.MAX_VALUE;
+        long minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long maxY = Long.MIN_VALUE;
+        for (T item : items) {
+            minX = Math.min(minX, (long) item.getMinX() + item.getMaxX());
+            minY = Math.min(minY, (long) item.getMinY() + item.getMaxY());
+            maxX = Math.max(maxX, (long) item.getMinX() + item.getMaxX());
+            maxY = Math.max(maxY, (long) item.getMinY() + item.getMaxY());
+        }
+        final double scaleX = (SIZE - 1) / (double) Math.max(maxX - minX, 1);
+        final double scaleY = (SIZE - 1) / (double) Math.max(maxY - minY, 1);
+
+        long[] keys = new long[items.size()];
+        for (int i = 0; i < keys.length; i++) {
+            T item = items.get(i);
+            final int x = (int) (((long) item.getMinX() + item.getMaxX() - minX) * scaleX);
+            final int y = (int) (((long) item.getMinY() + item.getMaxY() - minY) * scaleY);
+            keys[i] = index(x, y) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        Object[] unsorted = items.toArray();
+        for (int i = 0; i < keys.length; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) unsorted[(int) keys[i]];
+            items.set(i, item);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package wkteditor.index;
+
+/**
+ * An item found by a nearest neighbour search, together with its distance
+ * and its point closest to the searched coordinates.
+ *
+ * @param <T> The type of the item.
+ * @see RTree#nearest(double, double, int, double, RTree.Metric)
+ */
+public final class Neighbor<T> {
+    private final T item;
+    private final double distance;
+    private final double x;
+    private final double y;
+
+    public Neighbor(T item, double distance, double x, double y) {
+        this.item = item;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Gets the item, that has been found.
+     *
+     * @return The item.
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * Gets the distance between the searched coordinates and the item.
+     *
+     * @return The distance.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Gets the x-coordinate of the point of the item, that is closest to the
+     * searched coordinates.
+     *
+     * @return The x-coordinate of the closest point.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y-coordinate of the point of the item, that is closest to the
+     * searched coordinates.
+     *
+     * @return The y-coordinate of the closest point.
+     */
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return item + " at " + distance;
+    }
+}
@@ -0,0 +1,565 @@
+package wkteditor.index;
+
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * An R-tree, that finds the items whose bounds intersect a rectangle without
+ * looking at every item. Items are grouped in nodes of up to
+ * {@value #MAX_ENTRIES} entries, and each node knows the bounds of all items
+ * below it, so whole subtrees are skipped by a search.
+ * <p>
+ * The tree is built at once from many items with {@link #load(Collection)},
+ * which packs the nodes with the Sort-Tile-Recursive algorithm, or with
+ * {@link #loadInOrder(Collection)} from items sorted along a curve, and kept up to
+ * date with {@link #insert(Bounded)} and {@link #remove(Bounded)} while the
+ * items are edited. The bounds of an item are copied when it is inserted, so
+ * an item, whose bounds have changed, is updated by removing and inserting it
+ * again, see {@link #update(Bounded)}.
+ * <p>
+ * The items closest to a point are found with
+ * {@link #nearest(double, double, int, double, Metric)}, which visits the
+ * nodes best first, ordered by their distance to the point.
+ * <p>
+ * Items are found by equality, so an item can be replaced by an equal item.
+ * Each item can be stored only once.
+ *
+ * @param <T> The type of the items.
+ */
+public class RTree<T extends Bounded> {
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = MAX_ENTRIES * 2 / 5;
+
+    private Node root;
+    private Map<T, Entry<T>> entries;
+
+    public RTree() {
+        root = new Node(true);
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Gets the number of items in this tree.
+     *
+     * @return The number of items.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether the given item, or an item equal to it, is in this tree.
+     *
+     * @param item The item to check.
+     * @return <code>true</code> if the item is in this tree.
+     */
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    /**
+     * Removes all items from this tree.
+     */
+    public void clear() {
+        root = new Node(true);
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Replaces the items of this tree by the given items. The tree is built
+     * bottom up, by sorting the items into slices along the x-axis and
+     * packing each slice into nodes along the y-axis, which gives full nodes
+     * that barely overlap. This is much faster than inserting the items one by
+     * one.
+     *
+     * @param items The items to store, which must not contain equal items.
+     */
+    public void load(Collection<? extends T> items) {
+        entries = new HashMap<>(Math.max(items.size() * 4 / 3, 16));
+        List<Box> level = new ArrayList<>(items.size());
+        for (T item : items) {
+            Entry<T> entry = new Entry<>(item);
+            entries.put(item, entry);
+            level.add(entry);
+        }
+
+        boolean leaf = true;
+        do {
+            level = pack(level, leaf);
+            leaf = false;
+        } while (level.size() > 1);
+        root = (Node) level.get(0);
+    }
+
+    /**
+     * Replaces the items of this tree by the given items, which are packed
+     * into the nodes in the given order. The items should be sorted along a
+     * space filling curve, see {@link HilbertCurve}, so consecutive items are
+     * close to each other. The nodes are not sorted again, so this takes
+     * linear time, and a search visits the items in the given order.
+     *
+     * @param items The items to store, which must not contain equal items.
+     */
+    public void loadInOrder(Collection<? extends T> items) {
+        entries = new HashMap<>(Math.max(items.size() * 4 / 3, 16));
+        List<Box> level = new ArrayList<>(items.size());
+        for (T item : items) {
+            Entry<T> entry = new Entry<>(item);
+            entries.put(item, entry);
+            level.add(entry);
+        }
+
+        boolean leaf = true;
+        do {
+            List<Box> nodes = new ArrayList<>(level.size() / MAX_ENTRIES + 1);
+            for (int start = 0; start < level.size() || nodes.isEmpty(); start += MAX_ENTRIES) {
+                Node node = new Node(leaf);
+                for (Box box : level.subList(start, Math.min(start + MAX_ENTRIES, level.size()))) {
+                    node.add(box);
+                }
+                node.updateBounds();
+                nodes.add(node);
+            }
+            level = nodes;
+            leaf = false;
+        } while (level.size() > 1);
+        root = (Node) level.get(0);
+    }
+
+    /**
+     * Packs a level of the tree into the nodes of the level above.
+     *
+     * @param boxes The boxes of the level.
+     * @param leaf  Whether the boxes are entries, and the nodes are leaves.
+     * @return The nodes, at least one.
+     */
+    private List<Box> pack(List<Box> boxes, boolean leaf) {
+        final int nodeCount = Math.max((boxes.size() + MAX_ENTRIES - 1) / MAX_ENTRIES, 1);
+        final int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        final int sliceSize = sliceCount * MAX_ENTRIES;
+
+        boxes.sort(Comparator.comparingLong(Box::centerX));
+        List<Box> nodes = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < boxes.size() || nodes.isEmpty(); sliceStart += sliceSize) {
+            List<Box> slice = boxes.subList(sliceStart, Math.min(sliceStart + sliceSize, boxes.size()));
+            slice.sort(Comparator.comparingLong(Box::centerY));
+
+            for (int start = 0; start < slice.size() || nodes.isEmpty(); start += MAX_ENTRIES) {
+                Node node = new Node(leaf);
+                for (Box box : slice.subList(start, Math.min(start + MAX_ENTRIES, slice.size()))) {
+                    node.add(box);
+                }
+                node.updateBounds();
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Inserts an item into this tree. An equal item is replaced.
+     *
+     * @param item The item to insert.
+     */
+    public void insert(T item) {
+        remove(item);
+
+        Entry<T> entry = new Entry<>(item);
+        entries.put(item, entry);
+        insert(entry, 0);
+    }
+
+    /**
+     * Inserts a box into a node of the given height, and splits the nodes
+     * that overflow.
+     *
+     * @param box    The box to insert.
+     * @param height The height of the node above the leaves, <code>0</code> for entries.
+     */
+    private void insert(Box box, int height) {
+        Node node = root;
+        for (int depth = height(); depth > height; depth--) {
+            node.include(box);
+            node = node.chooseChild(box);
+        }
+        node.include(box);
+        node.add(box);
+
+        while (node.children.size() > MAX_ENTRIES) {
+            Node sibling = node.split();
+            Node parent = node.parent;
+            if (parent == null) {
+                root = new Node(false);
+                root.add(node);
+                root.add(sibling);
+                root.updateBounds();
+                return;
+            }
+            parent.add(sibling);
+            node = parent;
+        }
+    }
+
+    /**
+     * Gets the height of the tree.
+     *
+     * @return The number of nodes above the leaves.
+     */
+    private int height() {
+        int height = 0;
+        for (Node node = root; !node.leaf; node = (Node) node.children.get(0)) {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Removes an item, or the item equal to it, from this tree. Nodes, that
+     * have too few entries afterwards, are dissolved and their entries are
+     * inserted again.
+     *
+     * @param item The item to remove.
+     * @return <code>true</code> if the item was in this tree.
+     */
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+
+        List<Box> orphans = new ArrayList<>();
+        List<Integer> orphanHeights = new ArrayList<>();
+        Node node = entry.parent;
+        node.children.remove(entry);
+        for (int height = 0; node != root; height++) {
+            Node parent = node.parent;
+            if (node.children.size() < MIN_ENTRIES) {
+                parent.children.remove(node);
+                for (Box child : node.children) {
+                    orphans.add(child);
+                    orphanHeights.add(height);
+                }
+            } else {
+                node.updateBounds();
+            }
+            node = parent;
+        }
+        root.updateBounds();
+
+        for (int i = 0; i < orphans.size(); i++) {
+            insert(orphans.get(i), orphanHeights.get(i));
+        }
+        while (!root.leaf && root.children.size() == 1) {
+            root = (Node) root.children.get(0);
+            root.parent = null;
+        }
+        return true;
+    }
+
+    /**
+     * Updates the bounds of an item, after they have changed, or replaces an
+     * item by an equal item. An item, whose bounds are unchanged, keeps its
+     * place in the tree, so it is replaced in constant time.
+     *
+     * @param item The item to update.
+     */
+    public void update(T item) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null || entry.minX != item.getMinX() || entry.minY != item.getMinY()
+                || entry.maxX != item.getMaxX() || entry.maxY != item.getMaxY()) {
+            insert(item);
+            return;
+        }
+
+        entry.item = item;
+        // Removed first, so the map does not keep the previous item as the key
+        entries.remove(item);
+        entries.put(item, entry);
+    }
+
+    /**
+     * Visits the items, whose bounds intersect the given bounds. The bounds
+     * include their edges. The items are visited in the order of the nodes,
+     * which is the given order for a tree built by {@link #loadInOrder(Collection)}.
+     *
+     * @param minX    The smallest x-coordinate of the bounds.
+     * @param minY    The smallest y-coordinate of the bounds.
+     * @param maxX    The largest x-coordinate of the bounds.
+     * @param maxY    The largest y-coordinate of the bounds.
+     * @param visitor Called for each item, returns <code>false</code> to end the search.
+     * @return <code>false</code> if the search was ended by the visitor.
+     */
+    public boolean search(int minX, int minY, int maxX, int maxY, Predicate<? super T> visitor) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.leaf) {
+                for (Box child : node.children) {
+                    @SuppressWarnings("unchecked")
+                    T item = ((Entry<T>) child).item;
+                    if (child.intersects(minX, minY, maxX, maxY) && !visitor.test(item)) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            // Pushed backwards, so the children are visited in order
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                Box child = node.children.get(i);
+                if (child.intersects(minX, minY, maxX, maxY)) {
+                    stack.push((Node) child);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the items closest to the given coordinates. The nodes and items
+     * are visited best first: a queue holds the nodes and items found so
+     * far, ordered by the distance to their bounds, which no part of them is
+     * closer than. The items are measured when they leave the queue, and put
+     * back with their true distance, so an item is only reported once no
+     * other node or item can be closer. The search ends when <code>k</code>
+     * items have been reported, so only the nodes near the coordinates are
+     * visited.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param k           The maximum number of items to find.
+     * @param maxDistance The maximum distance of the items.
+     * @param metric      Measures the true distance of an item.
+     * @return The closest items, closest first.
+     */
+    public List<Neighbor<T>> nearest(double x, double y, int k, double maxDistance, Metric<? super T> metric) {
+        List<Neighbor<T>> found = new ArrayList<>(Math.min(k, 16));
+        if (entries.isEmpty() || k <= 0) {
+            return found;
+        }
+
+        PriorityQueue<Candidate<T>> queue = new PriorityQueue<>(Comparator.comparingDouble(c -> c.distance));
+        queue.add(new Candidate<>(root.distance(x, y), root, null));
+        Point2D.Double closest = new Point2D.Double();
+        while (!queue.isEmpty() && found.size() < k) {
+            Candidate<T> candidate = queue.poll();
+            if (candidate.distance > maxDistance) {
+                break;
+            }
+
+            if (candidate.neighbor != null) {
+                found.add(candidate.neighbor);
+            } else if (candidate.box instanceof Node) {
+                for (Box child : ((Node) candidate.box).children) {
+                    final double distance = child.distance(x, y);
+                    if (distance <= maxDistance) {
+                        queue.add(new Candidate<>(distance, child, null));
+                    }
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                T item = ((Entry<T>) candidate.box).item;
+                final double distance = metric.distance(item, x, y, maxDistance, closest);
+                if (distance <= maxDistance) {
+                    queue.add(new Candidate<>(distance, null, new Neighbor<>(item, distance, closest.x, closest.y)));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Measures the true distance of an item.
+     *
+     * @param <T> The type of the items.
+     */
+    @FunctionalInterface
+    public interface Metric<T> {
+        /**
+         * Measures the distance between the given coordinates and the point
+         * of an item closest to them. It must not be smaller than the
+         * distance to the bounds of the item.
+         *
+         * @param item        The item to measure.
+         * @param x           The x-coordinate to measure from.
+         * @param y           The y-coordinate to measure from.
+         * @param maxDistance The maximum distance, further items may be skipped.
+         * @param closest     Set to the point of the item closest to the coordinates.
+         * @return The distance, or {@link Double#POSITIVE_INFINITY} if the item is further
+         * away than <code>maxDistance</code>.
+         */
+        double distance(T item, double x, double y, double maxDistance, Point2D.Double closest);
+    }
+
+    /**
+     * A node or item waiting to be visited by a nearest neighbour search.
+     * Items, that have been measured, have a neighbor instead of a box.
+     */
+    private static final class Candidate<T> {
+        final double distance;
+        final Box box;
+        final Neighbor<T> neighbor;
+
+        Candidate(double distance, Box box, Neighbor<T> neighbor) {
+            this.distance = distance;
+            this.box = box;
+            this.neighbor = neighbor;
+        }
+    }
+
+    /**
+     * A rectangle in the tree.
+     */
+    private static abstract class Box {
+        int minX;
+        int minY;
+        int maxX;
+        int maxY;
+        Node parent;
+
+        long centerX() {
+            return (long) minX + maxX;
+        }
+
+        long centerY() {
+            return (long) minY + maxY;
+        }
+
+        /**
+         * Gets the distance between the given coordinates and this
+         * rectangle, which is <code>0</code> for coordinates within it.
+         */
+        double distance(double x, double y) {
+            final double dx = Math.max(Math.max(minX - x, x - maxX), 0);
+            final double dy = Math.max(Math.max(minY - y, y - maxY), 0);
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        boolean intersects(int minX, int minY, int maxX, int maxY) {
+            return this.maxX >= minX && this.minX <= maxX && this.maxY >= minY && this.minY <= maxY;
+        }
+    }
+
+    /**
+     * An item in a leaf, with the bounds it had when it was inserted.
+     */
+    private static final class Entry<T extends Bounded> extends Box {
+        T item;
+
+        Entry(T item) {
+            this.item = item;
+            minX = item.getMinX();
+            minY = item.getMinY();
+            maxX = item.getMaxX();
+            maxY = item.getMaxY();
+        }
+    }
+
+    /**
+     * A node, whose children are either entries or nodes.
+     */
+    private static final class Node extends Box {
+        final boolean leaf;
+        List<Box> children;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            children = new ArrayList<>(MAX_ENTRIES + 1);
+            minX = Integer.MAX_VALUE;
+            minY = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+            maxY = Integer.MIN_VALUE;
+        }
+
+        void add(Box child) {
+            children.add(child);
+            child.parent = this;
+        }
+
+        void include(Box box) {
+            minX = Math.min(minX, box.minX);
+            minY = Math.min(minY, box.minY);
+            maxX = Math.max(maxX, box.maxX);
+            maxY = Math.max(maxY, box.maxY);
+        }
+
+        void updateBounds() {
+            minX = Integer.MAX_VALUE;
+            minY = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+            maxY = Integer.MIN_VALUE;
+            for (Box child : children) {
+                include(child);
+            }
+        }
+
+        /**
+         * Chooses the child, whose area grows the least when it includes the
+         * given box, or the smallest child if several grow equally.
+         */
+        Node chooseChild(Box box) {
+            Node best = null;
+            double bestGrowth = Double.POSITIVE_INFINITY;
+            double bestArea = Double.POSITIVE_INFINITY;
+            for (Box child : children) {
+                final double area = area(child.minX, child.minY, child.maxX, child.maxY);
+                final double growth = area(Math.min(child.minX, box.minX), Math.min(child.minY, box.minY),
+                        Math.max(child.maxX, box.maxX), Math.max(child.maxY, box.maxY)) - area;
+                if (growth < bestGrowth || (growth == bestGrowth && area < bestArea)) {
+                    best = (Node) child;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Moves half of the children into a new node. The children are split
+         * along the axis, that gives the halves with the smaller perimeters.
+         *
+         * @return The new node.
+         */
+        Node split() {
+            List<Box> byX = new ArrayList<>(children);
+            byX.sort(Comparator.comparingLong(Box::centerX));
+            List<Box> byY = new ArrayList<>(children);
+            byY.sort(Comparator.comparingLong(Box::centerY));
+            final int half = children.size() / 2;
+            List<Box> sorted = perimeters(byX, half) <= perimeters(byY, half) ? byX : byY;
+
+            Node sibling = new Node(leaf);
+            children = new ArrayList<>(MAX_ENTRIES + 1);
+            for (Box child : sorted.subList(0, half)) {
+                add(child);
+            }
+            for (Box child : sorted.subList(half, sorted.size())) {
+                sibling.add(child);
+            }
+            updateBounds();
+            sibling.updateBounds();
+            return sibling;
+        }
+
+        private static double perimeters(List<Box> boxes, int half) {
+            return perimeter(boxes.subList(0, half)) + perimeter(boxes.subList(half, boxes.size()));
+        }
+
+        private static double perimeter(List<Box> boxes) {
+            Node bounds = new Node(false);
+            for (Box box : boxes) {
+                bounds.include(box);
+            }
+            return (double) bounds.maxX - bounds.minX + (double) bounds.maxY - bounds.minY;
+        }
+
+        private static double area(int minX, int minY, int maxX, int maxY) {
+            return ((double) maxX - minX) * ((double) maxY - minY);
+        }
+    }
+}
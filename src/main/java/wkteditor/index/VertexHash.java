@@ -0,0 +1,184 @@
+package wkteditor.index;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A spatial hash of vertices. The plane is divided into square cells of
+ * {@value #CELL_SIZE} units, and each vertex is stored in the cell it lies in,
+ * which is found in a hash map. Adding and removing a vertex takes constant
+ * time, and finding the vertex closest to a point only looks at the cells
+ * within the search distance, so it takes constant time on average, no matter
+ * how many vertices are stored.
+ * <p>
+ * The same vertex may be stored several times, as elements may share their
+ * vertices. It has to be removed as often as it has been added.
+ */
+public class VertexHash {
+    private static final int CELL_SIZE = 16;
+
+    private Map<Long, Cell> cells;
+    private int size;
+
+    public VertexHash() {
+        cells = new HashMap<>();
+        size = 0;
+    }
+
+    /**
+     * Gets the number of vertices in this hash.
+     *
+     * @return The number of vertices, counting each copy of a vertex.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all vertices from this hash.
+     */
+    public void clear() {
+        cells = new HashMap<>();
+        size = 0;
+    }
+
+    /**
+     * Adds a vertex.
+     *
+     * @param x The x-coordinate of the vertex.
+     * @param y The y-coordinate of the vertex.
+     */
+    public void add(int x, int y) {
+        cells.computeIfAbsent(key(cellOf(x), cellOf(y)), key -> new Cell()).add(x, y);
+        size++;
+    }
+
+    /**
+     * Removes one copy of a vertex.
+     *
+     * @param x The x-coordinate of the vertex.
+     * @param y The y-coordinate of the vertex.
+     * @return <code>true</code> if the vertex was in this hash.
+     */
+    public boolean remove(int x, int y) {
+        final long key = key(cellOf(x), cellOf(y));
+        Cell cell = cells.get(key);
+        if (cell == null || !cell.remove(x, y)) {
+            return false;
+        }
+        if (cell.size == 0) {
+            cells.remove(key);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Finds the vertex closest to the given coordinates, if it is within the
+     * given distance. If the distance covers more cells than there are cells
+     * in use, all cells are checked instead.
+     *
+     * @param x           The x-coordinate to measure from.
+     * @param y           The y-coordinate to measure from.
+     * @param maxDistance The maximum distance.
+     * @param closest     Set to the closest vertex, if one is found.
+     * @return <code>true</code> if a vertex has been found.
+     */
+    public boolean findClosest(double x, double y, double maxDistance, Point closest) {
+        final int minCellX = cellOf((int) Math.floor(x - maxDistance));
+        final int minCellY = cellOf((int) Math.floor(y - maxDistance));
+        final int maxCellX = cellOf((int) Math.ceil(x + maxDistance));
+        final int maxCellY = cellOf((int) Math.ceil(y + maxDistance));
+        double[] maxDistanceSq = {maxDistance * maxDistance};
+        boolean found = false;
+
+        if (((long) maxCellX - minCellX + 1) * ((long) maxCellY - minCellY + 1) > cells.size()) {
+            for (Cell cell : cells.values()) {
+                found |= cell.findClosest(x, y, maxDistanceSq, closest);
+            }
+            return found;
+        }
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                Cell cell = cells.get(key(cellX, cellY));
+                if (cell != null) {
+                    found |= cell.findClosest(x, y, maxDistanceSq, closest);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+    /**
+     * The vertices of a cell, stored as interleaved coordinates.
+     */
+    private static final class Cell {
+        private int[] coordinates;
+        private int size;
+
+        Cell() {
+            coordinates = new int[8];
+            size = 0;
+        }
+
+        void add(int x, int y) {
+            if (size * 2 == coordinates.length) {
+                int[] grown = new int[coordinates.length * 2];
+                System.arraycopy(coordinates, 0, grown, 0, coordinates.length);
+                coordinates = grown;
+            }
+            coordinates[size * 2] = x;
+            coordinates[size * 2 + 1] = y;
+            size++;
+        }
+
+        boolean remove(int x, int y) {
+            for (int i = 0; i < size; i++) {
+                if (coordinates[i * 2] == x && coordinates[i * 2 + 1] == y) {
+                    // The order does not matter, so the last vertex takes its place
+                    size--;
+                    coordinates[i * 2] = coordinates[size * 2];
+                    coordinates[i * 2 + 1] = coordinates[size * 2 + 1];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Finds the vertex closest to the given coordinates, if it is closer
+         * than the closest vertex found so far.
+         *
+         * @param x             The x-coordinate to measure from.
+         * @param y             The y-coordinate to measure from.
+         * @param maxDistanceSq The square of the distance to the closest vertex so far,
+         *                      which is updated if a closer vertex is found.
+         * @param closest       Set to the closest vertex, if one is found.
+         * @return <code>true</code> if a closer vertex has been found.
+         */
+        boolean findClosest(double x, double y, double[] maxDistanceSq, Point closest) {
+            boolean found = false;
+            for (int i = 0; i < size; i++) {
+                final double dx = coordinates[i * 2] - x;
+                final double dy = coordinates[i * 2 + 1] - y;
+                final double distanceSq = dx * dx + dy * dy;
+                if (distanceSq <= maxDistanceSq[0]) {
+                    maxDistanceSq[0] = distanceSq;
+                    closest.setLocation(coordinates[i * 2], coordinates[i * 2 + 1]);
+                    found = true;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package wkteditor.io;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads UTF-8 encoded characters from a byte buffer. Wkt data only consists
+ * of ascii characters, so ascii bytes are mapped to the characters with the
+ * same value directly. Other bytes are decoded as UTF-8, so the characters
+ * read are the same as those read from a file by {@link WKTReader}. The
+ * buffer must hold complete characters, which is the case for whole lines.
+ */
+final class ByteBufferReader extends Reader {
+    private static final int SCRATCH_SIZE = 1 << 13;
+
+    private final ByteBuffer buffer;
+    private final byte[] scratch;
+    private final CharsetDecoder decoder;
+    /**
+     * The characters decoded, but not read yet.
+     */
+    private final CharBuffer decoded;
+
+    ByteBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        scratch = new byte[SCRATCH_SIZE];
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        decoded = CharBuffer.allocate(SCRATCH_SIZE);
+        decoded.flip();
+    }
+
+    @Override
+    public int read(char[] chars, int off, int len) {
+        if (decoded.hasRemaining()) {
+            final int count = Math.min(len, decoded.remaining());
+            decoded.get(chars, off, count);
+            return count;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+
+        final int start = buffer.position();
+        final int count = Math.min(Math.min(len, buffer.remaining()), scratch.length);
+        buffer.get(scratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (scratch[i] < 0) {
+                buffer.position(start + i);
+                if (i > 0) {
+                    return i;
+                }
+                decode();
+                return read(chars, off, len);
+            }
+            chars[off + i] = (char) scratch[i];
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the next characters of the buffer, starting with one, that is
+     * not ascii.
+     */
+    private void decode() {
+        decoded.clear();
+        decoder.reset();
+        decoder.decode(buffer, decoded, true);
+        decoded.flip();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close, the buffer is released by the garbage collector
+    }
+}
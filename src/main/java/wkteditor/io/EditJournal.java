@@ -0,0 +1,682 @@
+package wkteditor.io;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * An append-only journal of the edit operations, that have been saved since
+ * the file next to it was written completely. The journal of a file is stored
+ * in the same directory, with {@value #EXTENSION} appended to the name.
+ * Saving an edit only appends the operation to the journal, and opening the
+ * file replays the journal on top of the elements read from the file.
+ * <p>
+ * The journal is a text file with one operation per line. The first line
+ * records the length and the modification time of the file, and the journal
+ * is ignored, if the file has been replaced since. Elements are referred to
+ * by their index in the document at the time of the operation:
+ * <pre>
+ * WKTJOURNAL 1048576 1760000000000
+ * NEW LINESTRING
+ * ADD 42 100 -20
+ * END 42
+ * INSERT 42 0 5 100 -20
+ * REMOVE 42 0 5 7
+ * DELETE 3 7 8
+ * </pre>
+ * Points are inserted into and removed from a part of an element, which is
+ * given by its index and followed by the index of the point within it.
+ * An incomplete last line, as left by a crash while appending, is ignored.
+ */
+public class EditJournal {
+    public static final String EXTENSION = ".journal";
+    private static final String HEADER = "WKTJOURNAL";
+
+    private static final Map<String, Supplier<WKTElement>> ELEMENT_TYPES = new HashMap<>();
+    private static final Map<Class<? extends WKTElement>, String> ELEMENT_NAMES = new HashMap<>();
+
+    static {
+        addElementType("POINT", WKTPoint.class, WKTPoint::new);
+        addElementType("LINESTRING", WKTLineString.class, WKTLineString::new);
+        addElementType("POLYGON", WKTPolygon.class, WKTPolygon::new);
+        addElementType("MULTIPOINT", WKTMultiPoint.class, WKTMultiPoint::new);
+        addElementType("MULTILINESTRING", WKTMultiLineString.class, WKTMultiLineString::new);
+        addElementType("MULTIPOLYGON", WKTMultiPolygon.class, WKTMultiPolygon::new);
+        addElementType("GEOMETRYCOLLECTION", WKTGeometryCollection.class, WKTGeometryCollection::new);
+    }
+
+    private final File baseFile;
+    private final File file;
+
+    /**
+     * Creates the journal of the given file. The journal is not created on
+     * disk, until operations are appended.
+     *
+     * @param baseFile The file, whose edits are recorded.
+     */
+    public EditJournal(File baseFile) {
+        this.baseFile = baseFile;
+        this.file = new File(baseFile.getPath() + EXTENSION);
+    }
+
+    private static void addElementType(String name, Class<? extends WKTElement> type,
+                                       Supplier<WKTElement> constructor) {
+        ELEMENT_TYPES.put(name, constructor);
+        ELEMENT_NAMES.put(type, name);
+    }
+
+    /**
+     * Gets the file containing the journal.
+     *
+     * @return The journal file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the size of the journal.
+     *
+     * @return The size of the journal in bytes, or <code>0</code> if there is no journal.
+     */
+    public long length() {
+        return file.length();
+    }
+
+    /**
+     * Reads the operations in the journal.
+     *
+     * @return The operations in the order they were appended, or
+     * <code>null</code> if there is no journal, or it belongs to an older
+     * version of the file.
+     * @throws IOException If the journal can not be read, or is malformed.
+     */
+    @Nullable
+    public List<Operation> read() throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final boolean complete = endsWithLineBreak();
+        List<Operation> operations = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.US_ASCII)) {
+            if (!getHeader().equals(in.readLine())) {
+                return null;
+            }
+
+            int lineNumber = 1;
+            String line = in.readLine();
+            while (line != null) {
+                lineNumber++;
+                final String next = in.readLine();
+                if (next == null && !complete) {
+                    // Interrupted while appending the last operation
+                    break;
+                }
+                operations.add(parseOperation(line, lineNumber));
+                line = next;
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Checks whether the journal file ends with a line break.
+     *
+     * @return <code>true</code> if the last line is complete.
+     * @throws IOException If the journal can not be read.
+     */
+    private boolean endsWithLineBreak() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    /**
+     * Parses a single line of the journal.
+     *
+     * @param line       The line to parse.
+     * @param lineNumber The number of the line, for error messages.
+     * @return The operation.
+     * @throws IOException If the line is malformed.
+     */
+    private static Operation parseOperation(String line, int lineNumber) throws IOException {
+        final String[] tokens = line.split(" ");
+        try {
+            switch (tokens[0]) {
+                case NewElement.NAME:
+                    if (tokens.length == 2 && ELEMENT_TYPES.containsKey(tokens[1])) {
+                        return new NewElement(tokens[1]);
+                    }
+                    break;
+                case AddPoint.NAME:
+                    if (tokens.length == 4) {
+                        return new AddPoint(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                                Integer.parseInt(tokens[3]));
+                    }
+                    break;
+                case EndSubElement.NAME:
+                    if (tokens.length == 2) {
+                        return new EndSubElement(Integer.parseInt(tokens[1]));
+                    }
+                    break;
+                case InsertPoint.NAME:
+                    if (tokens.length == 6) {
+                        return new InsertPoint(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                                Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]),
+                                Integer.parseInt(tokens[5]));
+                    }
+                    break;
+                case RemovePoints.NAME:
+                    if (tokens.length == 5) {
+                        return new RemovePoints(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                                Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+                    }
+                    break;
+                case Delete.NAME:
+                    int[] indices = new int[tokens.length - 1];
+                    for (int i = 0; i < indices.length; i++) {
+                        indices[i] = Integer.parseInt(tokens[i + 1]);
+                    }
+                    return new Delete(indices);
+            }
+        } catch (NumberFormatException exception) {
+            // Reported below
+        }
+        throw new IOException("Malformed journal entry \"" + line + "\" (line " + lineNumber + ")");
+    }
+
+    /**
+     * Appends operations to the journal and forces them to the disk. If there
+     * is no journal for the current version of the file, a new one is started.
+     *
+     * @param operations The operations to append.
+     * @throws IOException If the journal can not be written.
+     */
+    public void append(List<Operation> operations) throws IOException {
+        final boolean current = file.isFile() && isCurrent();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+             WKTWriter writer = new WKTWriter(channel)) {
+            if (current) {
+                channel.truncate(getCompleteLength(channel));
+                channel.position(channel.size());
+            } else {
+                channel.truncate(0);
+                writer.append(getHeader()).append('\n');
+            }
+            for (Operation operation : operations) {
+                operation.write(writer);
+                writer.append('\n');
+            }
+            writer.flush();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Gets the length of the journal without an incomplete last line, which
+     * would otherwise be continued by the next operation.
+     *
+     * @param channel The channel of the journal file.
+     * @return The length up to and including the last line break.
+     * @throws IOException If the journal can not be read.
+     */
+    private static long getCompleteLength(FileChannel channel) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(end - block.capacity(), 0);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                // Read the whole block
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether the journal belongs to the current version of the file.
+     *
+     * @return <code>true</code> if the header of the journal matches the file.
+     * @throws IOException If the journal can not be read.
+     */
+    private boolean isCurrent() throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.US_ASCII)) {
+            return getHeader().equals(in.readLine());
+        }
+    }
+
+    /**
+     * Deletes the journal, after the file has been written completely.
+     *
+     * @throws IOException If the journal can not be deleted.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Gets the header identifying the current version of the file.
+     *
+     * @return The first line of a journal for this version of the file.
+     */
+    private String getHeader() {
+        return HEADER + " " + baseFile.length() + " " + baseFile.lastModified();
+    }
+
+    /**
+     * Creates the operation of adding a new, empty element at the end of the document.
+     *
+     * @param element The element, that was added.
+     * @return The operation.
+     */
+    public static Operation newElement(WKTElement element) {
+        final String name = ELEMENT_NAMES.get(element.getClass());
+        if (name == null) {
+            throw new IllegalArgumentException("Unsupported element " + element.getClass().getName());
+        }
+        return new NewElement(name);
+    }
+
+    /**
+     * Creates the operation of adding a point to an element.
+     *
+     * @param index The index of the element.
+     * @param x     The x-coordinate of the point.
+     * @param y     The y-coordinate of the point.
+     * @return The operation.
+     * @see WKTElement#add(int, int)
+     */
+    public static Operation addPoint(int index, int x, int y) {
+        return new AddPoint(index, x, y);
+    }
+
+    /**
+     * Creates the operation of ending the current sub element of an element.
+     *
+     * @param index The index of the element.
+     * @return The operation.
+     * @see WKTElement#endSubElement()
+     */
+    public static Operation endSubElement(int index) {
+        return new EndSubElement(index);
+    }
+
+    /**
+     * Creates the operation of inserting a point into an element.
+     *
+     * @param index    The index of the element.
+     * @param part     The index of the part of the element.
+     * @param position The index of the inserted point within the part.
+     * @param x        The x-coordinate of the point.
+     * @param y        The y-coordinate of the point.
+     * @return The operation.
+     * @see WKTElement#insert(int, int, int, int)
+     */
+    public static Operation insertPoint(int index, int part, int position, int x, int y) {
+        return new InsertPoint(index, part, position, x, y);
+    }
+
+    /**
+     * Creates the operation of removing a range of points from an element.
+     *
+     * @param index The index of the element.
+     * @param part  The index of the part of the element.
+     * @param from  The index of the first removed point within the part (inclusive).
+     * @param to    The index of the last removed point within the part (exclusive).
+     * @return The operation.
+     * @see WKTElement#remove(int, int, int)
+     */
+    public static Operation removePoints(int index, int part, int from, int to) {
+        return new RemovePoints(index, part, from, to);
+    }
+
+    /**
+     * Creates the operation of deleting elements.
+     *
+     * @param indices The indices of the elements, in ascending order.
+     * @return The operation.
+     */
+    public static Operation delete(int[] indices) {
+        return new Delete(indices);
+    }
+
+    /**
+     * Replays operations on the elements of a document. All operations are
+     * checked first, so either all of them are applied, or none if any of
+     * them refers to an element, that does not exist. Whether the points
+     * referred to exist is only known while replaying, so the elements are
+     * restored, if an operation does not fit its element.
+     * <p>
+     * Each element is copied before it is changed in place for the first
+     * time, so the elements may still be shared with a snapshot of the
+     * document, that is read by another thread.
+     *
+     * @param operations The operations in the order they were appended.
+     * @param elements   The elements of the document.
+     * @throws IOException If an operation refers to an element or a point, that does not exist.
+     */
+    public static void replay(List<Operation> operations, List<WKTElement> elements) throws IOException {
+        int size = elements.size();
+        for (int i = 0; i < operations.size(); i++) {
+            size = operations.get(i).check(size);
+            if (size < 0) {
+                // The header is the first line
+                throw new IOException("Journal entry on line " + (i + 2) + " refers to a missing element or point");
+            }
+        }
+
+        // The elements are copied before they are changed, so the original ones can be restored
+        List<WKTElement> original = elements instanceof ElementList ? ((ElementList) elements).snapshot()
+                : new ArrayList<>(elements);
+        Set<WKTElement> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            final int index = operation.getEditedIndex();
+            if (index >= 0 && index < elements.size()) {
+                WKTElement element = elements.get(index);
+                if (!copies.contains(element)) {
+                    WKTElement copy = element.copy();
+                    elements.set(index, copy);
+                    copies.add(copy);
+                }
+            }
+
+            try {
+                operation.apply(elements);
+            } catch (IndexOutOfBoundsException | UnsupportedOperationException exception) {
+                elements.removeIf(element -> true);
+                elements.addAll(original);
+                throw new IOException("Journal entry on line " + (i + 2) + " does not fit its element", exception);
+            }
+        }
+    }
+
+    /**
+     * An edit operation on the elements of a document.
+     */
+    public abstract static class Operation {
+        /**
+         * Applies this operation to the elements of a document.
+         *
+         * @param elements The elements of the document.
+         * @throws IndexOutOfBoundsException If an element referred to does not exist.
+         */
+        public abstract void apply(List<WKTElement> elements);
+
+        /**
+         * Checks whether this operation can be applied to a document with the
+         * given number of elements.
+         *
+         * @param size The number of elements before this operation.
+         * @return The number of elements after this operation, or
+         * <code>-1</code> if it refers to an element, that does not exist.
+         */
+        abstract int check(int size);
+
+        /**
+         * Gets the index of the element, that this operation changes in place.
+         *
+         * @return The index, or <code>-1</code> if no element is changed in place.
+         */
+        int getEditedIndex() {
+            return -1;
+        }
+
+        /**
+         * Writes this operation as a line of the journal, without the line break.
+         *
+         * @param out The writer to write to.
+         * @throws IOException If there is an error while writing.
+         */
+        abstract void write(WKTWriter out) throws IOException;
+    }
+
+    private static class NewElement extends Operation {
+        private static final String NAME = "NEW";
+        private final String type;
+
+        private NewElement(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            elements.add(ELEMENT_TYPES.get(type).get());
+        }
+
+        @Override
+        int check(int size) {
+            return size + 1;
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME).append(' ').append(type);
+        }
+    }
+
+    private static class AddPoint extends Operation {
+        private static final String NAME = "ADD";
+        private final int index;
+        private final int x;
+        private final int y;
+
+        private AddPoint(int index, int x, int y) {
+            this.index = index;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        int getEditedIndex() {
+            return index;
+        }
+
+        @Override
+        int check(int size) {
+            return index >= 0 && index < size ? size : -1;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            WKTElement element = elements.get(index);
+            element.add(x, y);
+            // Lists storing copies of the elements need the edited element
+            elements.set(index, element);
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME).append(' ');
+            out.appendInt(index);
+            out.append(' ');
+            WKTWriter.appendCoordinate(out, x, y);
+        }
+    }
+
+    private static class EndSubElement extends Operation {
+        private static final String NAME = "END";
+        private final int index;
+
+        private EndSubElement(int index) {
+            this.index = index;
+        }
+
+        @Override
+        int getEditedIndex() {
+            return index;
+        }
+
+        @Override
+        int check(int size) {
+            return index >= 0 && index < size ? size : -1;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            WKTElement element = elements.get(index);
+            element.endSubElement();
+            elements.set(index, element);
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME).append(' ');
+            out.appendInt(index);
+        }
+    }
+
+    private static class InsertPoint extends Operation {
+        private static final String NAME = "INSERT";
+        private final int index;
+        private final int part;
+        private final int position;
+        private final int x;
+        private final int y;
+
+        private InsertPoint(int index, int part, int position, int x, int y) {
+            this.index = index;
+            this.part = part;
+            this.position = position;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        int getEditedIndex() {
+            return index;
+        }
+
+        @Override
+        int check(int size) {
+            return index >= 0 && index < size && part >= 0 && position >= 0 ? size : -1;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            WKTElement element = elements.get(index);
+            element.insert(part, position, x, y);
+            elements.set(index, element);
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME).append(' ');
+            out.appendInt(index);
+            out.append(' ');
+            out.appendInt(part);
+            out.append(' ');
+            out.appendInt(position);
+            out.append(' ');
+            WKTWriter.appendCoordinate(out, x, y);
+        }
+    }
+
+    private static class RemovePoints extends Operation {
+        private static final String NAME = "REMOVE";
+        private final int index;
+        private final int part;
+        private final int from;
+        private final int to;
+
+        private RemovePoints(int index, int part, int from, int to) {
+            this.index = index;
+            this.part = part;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        int getEditedIndex() {
+            return index;
+        }
+
+        @Override
+        int check(int size) {
+            return index >= 0 && index < size && part >= 0 && from >= 0 && from <= to ? size : -1;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            WKTElement element = elements.get(index);
+            element.remove(part, from, to);
+            elements.set(index, element);
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME).append(' ');
+            out.appendInt(index);
+            out.append(' ');
+            out.appendInt(part);
+            out.append(' ');
+            out.appendInt(from);
+            out.append(' ');
+            out.appendInt(to);
+        }
+    }
+
+    private static class Delete extends Operation {
+        private static final String NAME = "DELETE";
+        private final int[] indices;
+
+        private Delete(int[] indices) {
+            this.indices = indices;
+        }
+
+        @Override
+        public void apply(List<WKTElement> elements) {
+            if (indices.length > 0 && indices[indices.length - 1] >= elements.size()) {
+                throw new IndexOutOfBoundsException("Index " + indices[indices.length - 1]
+                        + " out of bounds for length " + elements.size());
+            }
+
+            // Elements are equal to their copies, so all are removed in a single pass
+            Set<WKTElement> deleted = new HashSet<>();
+            for (int index : indices) {
+                deleted.add(elements.get(index));
+            }
+            elements.removeIf(deleted::contains);
+        }
+
+        @Override
+        int check(int size) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] < (i == 0 ? 0 : indices[i - 1] + 1) || indices[i] >= size) {
+                    return -1;
+                }
+            }
+            return size - indices.length;
+        }
+
+        @Override
+        void write(WKTWriter out) throws IOException {
+            out.append(NAME);
+            for (int index : indices) {
+                out.append(' ');
+                out.appendInt(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package wkteditor.io;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Converts decimal numbers, that have already been split into their digits
+ * and exponent by the {@link WKTLexer}, to doubles without creating any
+ * objects. Small numbers are converted exactly with a single floating point
+ * operation, all others with the algorithm by Eisel and Lemire, as used by
+ * fast_float. Only the rare numbers this algorithm cannot decide fall back
+ * to {@link BigDecimal}.
+ */
+final class FastDoubleParser {
+    private static final int MIN_EXPONENT = -348;
+    private static final int MAX_EXPONENT = 347;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_EXACT_EXPONENT = 22;
+
+    private static final double[] EXACT_POWERS_OF_TEN = new double[MAX_EXACT_EXPONENT + 1];
+
+    /**
+     * The 128 bit approximations of the powers of ten, rounded down and
+     * normalized so that the highest bit is set. Each power is stored as its
+     * high word followed by its low word.
+     */
+    private static final long[] POWERS_OF_TEN = new long[(MAX_EXPONENT - MIN_EXPONENT + 1) * 2];
+
+    static {
+        double power = 1.0;
+        for (int i = 0; i <= MAX_EXACT_EXPONENT; i++) {
+            EXACT_POWERS_OF_TEN[i] = power;
+            power *= 10.0;
+        }
+
+        for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+            BigInteger approximation;
+            if (exponent >= 0) {
+                BigInteger value = BigInteger.TEN.pow(exponent);
+                int shift = value.bitLength() - 128;
+                approximation = shift >= 0 ? value.shiftRight(shift) : value.shiftLeft(-shift);
+            } else {
+                BigInteger divisor = BigInteger.TEN.pow(-exponent);
+                approximation = BigInteger.ONE.shiftLeft(127 + divisor.bitLength()).divide(divisor);
+            }
+
+            int index = (exponent - MIN_EXPONENT) * 2;
+            POWERS_OF_TEN[index] = approximation.shiftRight(64).longValue();
+            POWERS_OF_TEN[index + 1] = approximation.longValue();
+        }
+    }
+
+    private FastDoubleParser() {
+    }
+
+    /**
+     * Builds the double closest to <code>mantissa * 10^exponent</code>.
+     *
+     * @param negative  Whether the number is negative.
+     * @param mantissa  The decimal digits of the number, as an unsigned value.
+     * @param exponent  The decimal exponent.
+     * @param truncated Whether there were more digits, which did not fit into the mantissa. In that case the
+     *                  result might be one ulp smaller than the closest double.
+     * @return The double value.
+     */
+    static double toDouble(boolean negative, long mantissa, int exponent, boolean truncated) {
+        double value;
+
+        if (!truncated && mantissa >= 0 && mantissa <= MAX_EXACT_MANTISSA
+                && exponent >= -MAX_EXACT_EXPONENT && exponent <= MAX_EXACT_EXPONENT) {
+            // Both operands are exact, so the single rounding of the division or multiplication is correct
+            value = exponent < 0
+                    ? mantissa / EXACT_POWERS_OF_TEN[-exponent]
+                    : mantissa * EXACT_POWERS_OF_TEN[exponent];
+        } else {
+            value = eiselLemire(mantissa, exponent);
+            if (Double.isNaN(value)) {
+                value = new BigDecimal(new BigInteger(Long.toUnsignedString(mantissa)), -exponent).doubleValue();
+            }
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Converts the number with the Eisel-Lemire algorithm.
+     *
+     * @param mantissa The decimal digits of the number, as an unsigned value.
+     * @param exponent The decimal exponent.
+     * @return The double value, or {@link Double#NaN} if the algorithm cannot determine the correctly rounded
+     * result.
+     */
+    private static double eiselLemire(long mantissa, int exponent) {
+        if (mantissa == 0 || exponent < MIN_EXPONENT) {
+            return 0.0;
+        }
+        if (exponent > MAX_EXPONENT) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // Normalize the mantissa, so that its highest bit is set
+        final int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        final long normalized = mantissa << leadingZeros;
+        long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+
+        final int index = (exponent - MIN_EXPONENT) * 2;
+        long high = unsignedMultiplyHigh(normalized, POWERS_OF_TEN[index]);
+        long low = normalized * POWERS_OF_TEN[index];
+
+        // If the lower bits of the product are all set, the error of the
+        // approximation might affect the result, so use the wider approximation
+        if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + normalized, normalized) < 0) {
+            long wideHigh = unsignedMultiplyHigh(normalized, POWERS_OF_TEN[index + 1]);
+            long wideLow = normalized * POWERS_OF_TEN[index + 1];
+            long mergedLow = low + wideHigh;
+            long mergedHigh = Long.compareUnsigned(mergedLow, low) < 0 ? high + 1 : high;
+
+            if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow == -1L
+                    && Long.compareUnsigned(wideLow + normalized, normalized) < 0) {
+                return Double.NaN;
+            }
+            high = mergedHigh;
+            low = mergedLow;
+        }
+
+        // Shift to 54 bits
+        final long msb = high >>> 63;
+        long result = high >>> (msb + 9);
+        binaryExponent -= 1 ^ msb;
+
+        // The result is exactly halfway between two doubles
+        if (low == 0 && (high & 0x1FF) == 0 && (result & 3) == 1) {
+            return Double.NaN;
+        }
+
+        // Round to 53 bits
+        result += result & 1;
+        result >>>= 1;
+        if ((result >>> 53) > 0) {
+            result >>>= 1;
+            binaryExponent++;
+        }
+
+        // Subnormal numbers and infinity are left to the fallback
+        if (binaryExponent <= 0 || binaryExponent >= 0x7FF) {
+            return Double.NaN;
+        }
+
+        return Double.longBitsToDouble((binaryExponent << 52) | (result & 0x000FFFFFFFFFFFFFL));
+    }
+
+    /**
+     * Calculates the high 64 bits of the unsigned 128 bit product of the arguments.
+     *
+     * @param a The first factor.
+     * @param b The second factor.
+     * @return The high word of the product.
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
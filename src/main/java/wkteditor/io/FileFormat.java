@@ -0,0 +1,54 @@
+package wkteditor.io;
+
+import java.io.File;
+
+/**
+ * The file formats, that elements can be read from and written to. The
+ * format of a file is determined by its extension.
+ */
+public enum FileFormat {
+    /**
+     * Well-known text, one element per line.
+     */
+    WKT(".wkt"),
+    /**
+     * Well-known text, compressed with gzip.
+     */
+    WKT_GZ(".wkt.gz"),
+    /**
+     * Well-known binary, the elements are stored one after another.
+     */
+    WKB(".wkb");
+
+    private final String extension;
+
+    FileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension of this format.
+     *
+     * @return The file extension, including the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Determines the format of a file by its extension. Files with an unknown
+     * extension are considered wkt files.
+     *
+     * @param file The file.
+     * @return The format of the file.
+     */
+    public static FileFormat of(File file) {
+        String name = file.getName().toLowerCase();
+        for (FileFormat format : values()) {
+            if (name.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return WKT;
+    }
+}
@@ -0,0 +1,230 @@
+package wkteditor.io;
+
+import wkteditor.WKTElement;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves elements to a file, in the format determined by the extension of the
+ * file. The elements are split into chunks, which are serialized in parallel
+ * into memory, and written to the file in order.
+ * <p>
+ * The target file is never written directly. The data is written to a
+ * temporary file next to it, which is forced to the disk and then renamed to
+ * the target file. If saving fails, the target file keeps its old content.
+ * <p>
+ * Compressed files are written as one gzip member per chunk. Concatenated
+ * members are a valid gzip file, which decompresses to the concatenated data.
+ */
+public class ParallelElementWriter {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final FileFormat format;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a writer for the given file, which serializes the elements in
+     * the common pool.
+     *
+     * @param file The file to write.
+     */
+    public ParallelElementWriter(File file) {
+        this(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a writer for the given file.
+     *
+     * @param file The file to write.
+     * @param pool The pool to serialize the elements in.
+     */
+    public ParallelElementWriter(File file, ForkJoinPool pool) {
+        this.file = file;
+        this.format = FileFormat.of(file);
+        this.pool = pool;
+    }
+
+    /**
+     * Writes the given elements to the file, replacing its content. The
+     * elements must not be modified while they are written.
+     *
+     * @param elements The elements to write.
+     * @param progress Receives the number of elements written so far after
+     *                 each chunk. Writing is aborted if it throws an
+     *                 exception, in which case the file is left unchanged.
+     * @throws IOException If there is an error while writing the file.
+     */
+    public void writeElements(List<WKTElement> elements, IntConsumer progress) throws IOException {
+        final Path target = file.toPath().toAbsolutePath();
+        final Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeChunks(elements, Channels.newOutputStream(channel), progress);
+                channel.force(true);
+            }
+            copyPermissions(target, temp);
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            forceDirectory(target.getParent());
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Serializes the elements in chunks and writes the chunks in order. Only a
+     * few chunks are serialized ahead, so the memory needed does not depend on
+     * the number of elements.
+     *
+     * @param elements The elements to write.
+     * @param out      The output to write the chunks to.
+     * @param progress Receives the number of elements written so far.
+     * @throws IOException If there is an error while serializing or writing.
+     */
+    private void writeChunks(List<WKTElement> elements, OutputStream out, IntConsumer progress) throws IOException {
+        final int maxPending = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<ByteArrayOutputStream>> pending = new ArrayDeque<>();
+        try {
+            int submitted = 0;
+            int written = 0;
+            while (written < elements.size()) {
+                while (submitted < elements.size() && pending.size() < maxPending) {
+                    List<WKTElement> chunk = elements.subList(submitted,
+                            Math.min(submitted + CHUNK_SIZE, elements.size()));
+                    pending.add(pool.submit(() -> serialize(chunk)));
+                    submitted += chunk.size();
+                }
+
+                join(pending.remove()).writeTo(out);
+                written = Math.min(written + CHUNK_SIZE, elements.size());
+                progress.accept(written);
+            }
+        } finally {
+            for (ForkJoinTask<ByteArrayOutputStream> task : pending) {
+                task.cancel(false);
+            }
+            // Don't return while chunks are still reading the elements
+            for (ForkJoinTask<ByteArrayOutputStream> task : pending) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Serializes a chunk of elements into memory.
+     *
+     * @param chunk The elements to serialize.
+     * @return The serialized elements.
+     * @throws IOException If there is an error while serializing.
+     */
+    private ByteArrayOutputStream serialize(List<WKTElement> chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(GZIP_BUFFER_SIZE);
+        switch (format) {
+            case WKB:
+                try (WKBWriter writer = new WKBWriter(Channels.newChannel(out))) {
+                    writer.writeElements(chunk);
+                }
+                break;
+            case WKT_GZ:
+                try (WKTWriter writer = new WKTWriter(Channels.newChannel(
+                        new GZIPOutputStream(out, GZIP_BUFFER_SIZE)))) {
+                    writer.writeElements(chunk);
+                }
+                break;
+            default:
+                try (WKTWriter writer = new WKTWriter(Channels.newChannel(out))) {
+                    writer.writeElements(chunk);
+                }
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * Waits for a chunk to be serialized.
+     *
+     * @param task The task serializing the chunk.
+     * @return The serialized chunk.
+     * @throws IOException If there was an error while serializing, or the thread was interrupted.
+     */
+    private static ByteArrayOutputStream join(ForkJoinTask<ByteArrayOutputStream> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException exception) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException exception) {
+            // The pool wraps checked exceptions, possibly more than once
+            for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            if (exception.getCause() instanceof Error) {
+                throw (Error) exception.getCause();
+            }
+            throw new IOException(exception.getCause());
+        }
+    }
+
+    /**
+     * Gives the temporary file the permissions of the file it replaces, if
+     * the file system supports them.
+     *
+     * @param target The file being replaced.
+     * @param temp   The temporary file.
+     */
+    private static void copyPermissions(Path target, Path temp) {
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        PosixFileAttributeView tempView = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if (targetView == null || tempView == null || !Files.exists(target)) {
+            return;
+        }
+
+        try {
+            Set<PosixFilePermission> permissions = targetView.readAttributes().permissions();
+            tempView.setPermissions(permissions);
+        } catch (IOException exception) {
+            // Keep the default permissions
+        }
+    }
+
+    /**
+     * Forces the directory to the disk, so the rename survives a crash. Not
+     * all platforms can open directories, so this may do nothing.
+     *
+     * @param directory The directory to force.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException exception) {
+            // Not supported on this platform
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package wkteditor.io;
+
+import wkteditor.WKTElement;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads wkt files on multiple threads. The file is memory mapped and split
+ * into chunks at lines starting with a wkt type, which is how
+ * {@link wkteditor.WKTEditor} saves its elements. The chunks are parsed on a
+ * fork join pool and the results are handed out in the order of the file.
+ * <p>
+ * If an element spans a chunk boundary, the chunk containing its start fails
+ * to parse. In that case the rest of the file, starting with that chunk, is
+ * read sequentially, so any file the {@link WKTReader} can read, can also be
+ * read by this reader. In lenient mode, malformed elements are skipped at the
+ * same line starts the file is split at, so the chunks only have to be read
+ * again if one ends within an element.
+ * <p>
+ * Files compressed with gzip can not be split. They are decompressed on a
+ * separate thread and read sequentially instead.
+ */
+public class ParallelWKTReader implements Closeable {
+    private static final long CHUNK_SIZE = 1 << 23;
+    private static final int SCAN_WINDOW_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 1 << 12;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final boolean compressed;
+    private final long size;
+    private boolean lenient;
+    private long bytesRead;
+    private long rejectCount;
+    private final List<WKTParseException> rejects;
+    private long roundedCount;
+
+    public ParallelWKTReader(File file) throws IOException {
+        this(file, ForkJoinPool.commonPool());
+    }
+
+    public ParallelWKTReader(File file, ForkJoinPool pool) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.pool = pool;
+        compressed = FileFormat.of(file) == FileFormat.WKT_GZ;
+        size = channel.size();
+        lenient = false;
+        bytesRead = 0;
+        rejectCount = 0;
+        rejects = new ArrayList<>();
+        roundedCount = 0;
+    }
+
+    /**
+     * Sets whether malformed elements are skipped instead of stopping the
+     * reading with an exception.
+     *
+     * @param lenient <code>true</code> to skip malformed elements.
+     * @see WKTReader#setLenient(boolean)
+     */
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return The size of the file in bytes, compressed if it is a gzip file.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes, whose elements have been passed to the
+     * consumer so far. This can be used to display the progress of reading.
+     * For gzip files, this is the number of compressed bytes.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Gets the number of malformed elements, that have been skipped so far.
+     *
+     * @return The number of skipped elements.
+     */
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    /**
+     * Gets the errors of the skipped elements. Only the first
+     * {@value WKTReader#MAX_REPORTED_REJECTS} errors are kept.
+     *
+     * @return The errors of the skipped elements, in the order of the file.
+     */
+    public List<WKTParseException> getRejects() {
+        return Collections.unmodifiableList(rejects);
+    }
+
+    /**
+     * Gets the number of coordinate values, that had decimals and have been
+     * rounded to integers so far.
+     *
+     * @return The number of rounded values.
+     * @see WKTReader#getRoundedCount()
+     */
+    public long getRoundedCount() {
+        return roundedCount;
+    }
+
+    /**
+     * Reads all wkt data from the file.
+     *
+     * @return All wkt data that have been read.
+     * @throws IOException If there is an error while reading the file.
+     */
+    public List<WKTElement> readElements() throws IOException {
+        List<WKTElement> elements = new ArrayList<>();
+        readElements(elements::addAll);
+        return elements;
+    }
+
+    /**
+     * Reads all wkt data from the file and hands them to the consumer in
+     * batches. The batches are passed in the order of the file, and only a
+     * limited number of chunks is parsed ahead of the consumer.
+     *
+     * @param consumer The consumer receiving the elements.
+     * @throws IOException If there is an error while reading the file.
+     */
+    public void readElements(Consumer<List<WKTElement>> consumer) throws IOException {
+        if (compressed) {
+            readSequentially(0, 0, consumer);
+            return;
+        }
+
+        final int maxPending = Math.max(2, pool.getParallelism() * 2);
+        final Deque<Chunk> pending = new ArrayDeque<>(maxPending);
+
+        long start = 0;
+        int lineOffset = 0;
+        try {
+            while (start < size || !pending.isEmpty()) {
+                while (start < size && pending.size() < maxPending) {
+                    long end = findChunkStart(start + CHUNK_SIZE, size);
+                    Chunk chunk = new Chunk(start, end);
+                    pool.execute(chunk);
+                    pending.add(chunk);
+                    start = end;
+                }
+
+                Chunk chunk = pending.poll();
+                List<WKTElement> elements = null;
+                try {
+                    elements = chunk.join();
+                } catch (UncheckedIOException | IllegalArgumentException exception) {
+                    // Handled below
+                }
+
+                if (elements == null || chunk.reader.isIncomplete()) {
+                    readSequentially(chunk.start, lineOffset, consumer);
+                    return;
+                }
+
+                addResults(chunk.reader, lineOffset);
+                lineOffset += chunk.reader.getLineCount() - 1;
+                bytesRead = chunk.end;
+                consumer.accept(elements);
+            }
+        } finally {
+            // Stop parsing ahead, if reading failed or was aborted by the consumer
+            for (Chunk chunk : pending) {
+                chunk.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Adds the rejects and the rounded values of a reader, that read a part
+     * of the file.
+     *
+     * @param reader     The reader.
+     * @param lineOffset The number of lines in the file before the part read by the reader.
+     */
+    private void addResults(WKTReader reader, int lineOffset) {
+        roundedCount += reader.getRoundedCount();
+        rejectCount += reader.getRejectCount();
+        for (WKTParseException reject : reader.getRejects()) {
+            if (rejects.size() == WKTReader.MAX_REPORTED_REJECTS) {
+                break;
+            }
+            rejects.add(reject.moveDown(lineOffset));
+        }
+    }
+
+    /**
+     * Reads the file from the given position up to its end on the current thread.
+     *
+     * @param position   The position to start reading at.
+     * @param lineOffset The number of lines in the file before the position.
+     * @param consumer   The consumer receiving the elements.
+     * @throws IOException If there is an error while reading the file.
+     */
+    private void readSequentially(long position, int lineOffset, Consumer<List<WKTElement>> consumer)
+            throws IOException {
+        channel.position(position);
+        InputStream in = Channels.newInputStream(channel);
+        if (compressed) {
+            in = new ReadAheadInputStream(new GZIPInputStream(in, GZIP_BUFFER_SIZE));
+        }
+        WKTReader wktReader = new WKTReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        wktReader.setLenient(lenient);
+
+        List<WKTElement> batch = new ArrayList<>(BATCH_SIZE);
+        WKTElement element;
+        try {
+            while ((element = wktReader.readElement()) != null) {
+                batch.add(element);
+                if (batch.size() == BATCH_SIZE) {
+                    bytesRead = channel.position();
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        } catch (WKTParseException exception) {
+            throw exception.moveDown(lineOffset);
+        } finally {
+            addResults(wktReader, lineOffset);
+            if (compressed) {
+                // Stops the decompression thread
+                in.close();
+            }
+        }
+        bytesRead = size;
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    /**
+     * Finds the start of the first line at or after the given position, that
+     * begins with a letter, and therefore most likely with a wkt type.
+     *
+     * @param position The position to start searching at.
+     * @param size     The size of the file.
+     * @return The position of the line start, or the size of the file if there is none.
+     * @throws IOException If there is an error while reading the file.
+     */
+    private long findChunkStart(long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW_SIZE);
+        // Start one byte early, to see whether the position itself starts a line
+        long windowStart = position - 1;
+        boolean newline = false;
+
+        while (windowStart < size) {
+            window.clear();
+            int read = channel.read(window, windowStart);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (newline && ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z'))) {
+                    return windowStart + i;
+                }
+                newline = b == '\n';
+            }
+            windowStart += read;
+        }
+
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses a single chunk of the file.
+     */
+    private class Chunk extends RecursiveTask<List<WKTElement>> {
+        private static final long serialVersionUID = 1L;
+
+        private final long start;
+        private final long end;
+        private WKTReader reader;
+
+        private Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<WKTElement> compute() {
+            try {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                reader = new WKTReader(new ByteBufferReader(buffer));
+                reader.setLenient(lenient);
+                return reader.readElements();
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package wkteditor.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an input stream ahead on a separate thread. This is used for
+ * decompressing, so the decompression and the parsing of the decompressed
+ * data run on two cores. The data is handed over in blocks, of which only a
+ * few are read ahead.
+ */
+final class ReadAheadInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BLOCKS_AHEAD = 4;
+
+    private final InputStream in;
+    private final BlockingQueue<Block> queue;
+    private final Thread thread;
+    private Block current;
+    private int pos;
+    private volatile boolean closed;
+    /**
+     * Whether the thread has stopped reading, guarded by this stream.
+     */
+    private boolean stopped;
+
+    ReadAheadInputStream(InputStream in) {
+        this.in = in;
+        queue = new ArrayBlockingQueue<>(BLOCKS_AHEAD);
+        current = new Block(new byte[0], 0, null);
+        pos = 0;
+        closed = false;
+        stopped = false;
+
+        thread = new Thread(this::readAhead, "ReadAhead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads blocks from the input stream until its end is reached. The end is
+     * marked by a block of length <code>-1</code>. Errors are handed over to
+     * the reader, including unchecked ones like those of a decompressor.
+     * <p>
+     * Closing the input stream during a read could break the decompressor,
+     * so a stream closed while reading ahead is closed by this thread, once
+     * it stops.
+     */
+    private void readAhead() {
+        try {
+            try {
+                while (!closed) {
+                    byte[] data = new byte[BLOCK_SIZE];
+                    int length = 0;
+                    int read = 0;
+                    while (length < data.length && (read = in.read(data, length, data.length - length)) >= 0) {
+                        length += read;
+                    }
+                    queue.put(new Block(data, length, null));
+                    if (read < 0) {
+                        queue.put(new Block(data, -1, null));
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException exception) {
+                if (!closed) {
+                    queue.put(new Block(null, -1, exception));
+                }
+            }
+        } catch (InterruptedException exception) {
+            // Closed while waiting for the reader
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                if (closed) {
+                    closeInput();
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure, that the current block has bytes left to read.
+     *
+     * @return <code>false</code> if the end of the stream was reached.
+     * @throws IOException If there was an error while reading ahead, or the thread was interrupted.
+     */
+    private boolean next() throws IOException {
+        while (current.length >= 0 && pos == current.length) {
+            try {
+                current = queue.take();
+                pos = 0;
+            } catch (InterruptedException exception) {
+                throw new InterruptedIOException();
+            }
+        }
+        if (current.error != null) {
+            throw new IOException(current.error);
+        }
+        return current.length >= 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return current.data[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, b, off, read);
+        pos += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current.length >= 0 ? current.length - pos : 0;
+    }
+
+    /**
+     * Stops reading ahead. The input stream is closed right away, if the
+     * thread has stopped already, or by the thread as soon as it stops.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (stopped) {
+                closeInput();
+                return;
+            }
+        }
+        thread.interrupt();
+    }
+
+    private void closeInput() {
+        try {
+            in.close();
+        } catch (IOException exception) {
+            // Nothing is read from it anymore
+        }
+    }
+
+    /**
+     * A block of data read ahead.
+     */
+    private static class Block {
+        private final byte[] data;
+        private final int length;
+        private final Exception error;
+
+        private Block(byte[] data, int length, Exception error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
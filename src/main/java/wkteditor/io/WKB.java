@@ -0,0 +1,35 @@
+package wkteditor.io;
+
+/**
+ * Constants of the well-known binary format, that are shared by the
+ * {@link WKBReader} and the {@link WKBWriter}.
+ */
+final class WKB {
+    static final byte BIG_ENDIAN = 0;
+    static final byte LITTLE_ENDIAN = 1;
+
+    static final int POINT = 1;
+    static final int LINESTRING = 2;
+    static final int POLYGON = 3;
+    static final int MULTIPOINT = 4;
+    static final int MULTILINESTRING = 5;
+    static final int MULTIPOLYGON = 6;
+    static final int GEOMETRYCOLLECTION = 7;
+
+    /**
+     * The flags of the extended format used by PostGIS, which are set in the
+     * upper bits of the type.
+     */
+    static final int EWKB_Z = 0x80000000;
+    static final int EWKB_M = 0x40000000;
+    static final int EWKB_SRID = 0x20000000;
+    static final int EWKB_FLAGS = EWKB_Z | EWKB_M | EWKB_SRID;
+
+    /**
+     * The ISO format adds multiples of this value to the type instead.
+     */
+    static final int ISO_DIMENSION_STEP = 1000;
+
+    private WKB() {
+    }
+}
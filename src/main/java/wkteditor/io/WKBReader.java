@@ -0,0 +1,447 @@
+package wkteditor.io;
+
+import org.jetbrains.annotations.Nullable;
+import wkteditor.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads elements from well-known binary. The input consists of geometries,
+ * that are stored one after another. Both byte orders, the extended format
+ * of PostGIS with SRID, Z and M flags, and the ISO types with Z and M
+ * coordinates are supported. As the editor works with integer coordinates in
+ * the plane, the SRID and the Z and M coordinates are dropped, and the x- and
+ * y-coordinates are rounded to the closest integer.
+ * <p>
+ * The coordinates are copied from the buffer in bulk into a primitive array,
+ * so no objects are created per coordinate.
+ */
+public class WKBReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BATCH_SIZE = 1 << 12;
+    private static final int MAX_COLLECTION_DEPTH = 64;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final double[] coordinates;
+    /**
+     * The number of bytes read before the current buffer content.
+     */
+    private long offset;
+    /**
+     * The number of values per point of the current geometry.
+     */
+    private int dimensions;
+    private long roundedCount;
+
+    public WKBReader(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    public WKBReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+        coordinates = new double[BUFFER_SIZE / Double.BYTES];
+        offset = 0;
+        dimensions = 2;
+        roundedCount = 0;
+    }
+
+    /**
+     * Gets the number of bytes, whose elements have been read so far. This
+     * can be used to display the progress of reading.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead() {
+        return offset + buffer.position();
+    }
+
+    /**
+     * Gets the number of x- and y-coordinates read so far, that had decimals
+     * and have been rounded to integers.
+     *
+     * @return The number of rounded values.
+     */
+    public long getRoundedCount() {
+        return roundedCount;
+    }
+
+    /**
+     * Reads all elements from the input.
+     *
+     * @return All elements that have been read.
+     * @throws IOException If the input is malformed, or there is an error while reading from it.
+     */
+    public List<WKTElement> readElements() throws IOException {
+        List<WKTElement> elements = new ArrayList<>();
+        readElements(elements::addAll);
+        return elements;
+    }
+
+    /**
+     * Reads all elements from the input and hands them to the consumer in
+     * batches.
+     *
+     * @param consumer The consumer receiving the elements.
+     * @throws IOException If the input is malformed, or there is an error while reading from it.
+     */
+    public void readElements(Consumer<List<WKTElement>> consumer) throws IOException {
+        List<WKTElement> batch = new ArrayList<>(BATCH_SIZE);
+        WKTElement element;
+
+        while ((element = readElement()) != null) {
+            batch.add(element);
+            if (batch.size() == BATCH_SIZE) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    /**
+     * Reads the next element from the input.
+     *
+     * @return The next element, or <code>null</code> if the end of the input was reached.
+     * @throws IOException If the element is malformed, or there is an error while reading from the input.
+     */
+    @Nullable
+    public WKTElement readElement() throws IOException {
+        if (!buffer.hasRemaining() && !fill(1)) {
+            return null;
+        }
+        return readGeometry(0);
+    }
+
+    /**
+     * Reads a geometry, which might be nested in geometry collections.
+     *
+     * @param depth The number of enclosing geometry collections.
+     * @return The read element.
+     * @throws IOException If the geometry is malformed, or there is an error while reading from the input.
+     */
+    private WKTElement readGeometry(int depth) throws IOException {
+        final int type = readHeader();
+
+        switch (type) {
+            case WKB.POINT:
+                WKTPoint point = new WKTPoint();
+                readPoints(point, 1, false);
+                return point;
+            case WKB.LINESTRING:
+                WKTLineString line = new WKTLineString();
+                readPoints(line, readCount(), false);
+                return line;
+            case WKB.POLYGON:
+                WKTPolygon polygon = new WKTPolygon();
+                readRings(polygon);
+                return polygon;
+            case WKB.MULTIPOINT:
+                return readMultiPoint();
+            case WKB.MULTILINESTRING:
+                return readMultiLineString();
+            case WKB.MULTIPOLYGON:
+                return readMultiPolygon();
+            case WKB.GEOMETRYCOLLECTION:
+                return readGeometryCollection(depth);
+            default:
+                throw error("Unsupported wkb type " + type);
+        }
+    }
+
+    /**
+     * Reads a wkb multi point.
+     *
+     * @return The read multi point.
+     * @throws IOException If the geometry is malformed, or there is an error while reading from the input.
+     */
+    private WKTMultiPoint readMultiPoint() throws IOException {
+        WKTMultiPoint multiPoint = new WKTMultiPoint();
+
+        final int count = readCount();
+        for (int i = 0; i < count; i++) {
+            expectType(WKB.POINT);
+            readPoints(multiPoint, 1, false);
+        }
+
+        return multiPoint;
+    }
+
+    /**
+     * Reads a wkb multi line string.
+     *
+     * @return The read multi line string.
+     * @throws IOException If the geometry is malformed, or there is an error while reading from the input.
+     */
+    private WKTMultiLineString readMultiLineString() throws IOException {
+        WKTMultiLineString lines = new WKTMultiLineString();
+
+        final int count = readCount();
+        for (int i = 0; i < count; i++) {
+            expectType(WKB.LINESTRING);
+            lines.endSubElement();
+            readPoints(lines, readCount(), false);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Reads a wkb multi polygon.
+     *
+     * @return The read multi polygon.
+     * @throws IOException If the geometry is malformed, or there is an error while reading from the input.
+     */
+    private WKTMultiPolygon readMultiPolygon() throws IOException {
+        WKTMultiPolygon polygons = new WKTMultiPolygon();
+
+        final int count = readCount();
+        for (int i = 0; i < count; i++) {
+            expectType(WKB.POLYGON);
+            polygons.endPolygon();
+            readRings(polygons);
+        }
+
+        return polygons;
+    }
+
+    /**
+     * Reads a wkb geometry collection.
+     *
+     * @param depth The number of enclosing geometry collections.
+     * @return The read geometry collection.
+     * @throws IOException If the geometry is malformed, the collections are nested too deeply, or there is an error
+     *                     while reading from the input.
+     */
+    private WKTGeometryCollection readGeometryCollection(int depth) throws IOException {
+        if (depth == MAX_COLLECTION_DEPTH) {
+            throw error("Geometry collections nested too deeply");
+        }
+        WKTGeometryCollection collection = new WKTGeometryCollection();
+
+        final int count = readCount();
+        for (int i = 0; i < count; i++) {
+            collection.add(readGeometry(depth + 1));
+        }
+
+        return collection;
+    }
+
+    /**
+     * Reads the rings of a polygon. Each ring after the first one is added as
+     * a new sub element.
+     *
+     * @param element The element to add the rings to.
+     * @throws IOException If the rings are malformed, or there is an error while reading from the input.
+     */
+    private void readRings(WKTElement element) throws IOException {
+        final int count = readCount();
+        for (int ring = 0; ring < count; ring++) {
+            if (ring > 0) {
+                element.endSubElement();
+            }
+            readPoints(element, readCount(), true);
+        }
+    }
+
+    /**
+     * Reads the given number of points and adds them to the element. The
+     * points are copied from the buffer in blocks, as many as fit into it.
+     *
+     * @param element The element to add the points to.
+     * @param count   The number of points.
+     * @param ring    Whether the points form a ring. The closing point, which
+     *                repeats the first one, is left out then, as polygons
+     *                close their sub-polygons implicitly.
+     * @throws IOException If a coordinate is out of range, or there is an error while reading from the input.
+     */
+    private void readPoints(WKTElement element, int count, boolean ring) throws IOException {
+        final int pointSize = Double.BYTES * dimensions;
+        final int maxPoints = buffer.capacity() / pointSize;
+        int firstX = 0;
+        int firstY = 0;
+
+        for (int start = 0; start < count; start += maxPoints) {
+            final int points = Math.min(count - start, maxPoints);
+            require(points * pointSize);
+            buffer.asDoubleBuffer().get(coordinates, 0, points * dimensions);
+            buffer.position(buffer.position() + points * pointSize);
+
+            for (int i = 0; i < points; i++) {
+                final int x = toCoordinate(coordinates[i * dimensions]);
+                final int y = toCoordinate(coordinates[i * dimensions + 1]);
+                final int index = start + i;
+
+                if (index == 0) {
+                    firstX = x;
+                    firstY = y;
+                } else if (ring && index == count - 1 && x == firstX && y == firstY) {
+                    continue;
+                }
+                element.add(x, y);
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a geometry, consisting of the byte order and the
+     * type. The byte order is applied to the buffer, and the number of
+     * dimensions of the geometry is stored.
+     *
+     * @return The type of the geometry, without any dimension flags.
+     * @throws IOException If the header is malformed, or there is an error while reading from the input.
+     */
+    private int readHeader() throws IOException {
+        require(1 + Integer.BYTES);
+        final byte byteOrder = buffer.get();
+        if (byteOrder == WKB.BIG_ENDIAN) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else if (byteOrder == WKB.LITTLE_ENDIAN) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            throw error("Invalid byte order " + byteOrder);
+        }
+
+        int type = buffer.getInt();
+        boolean z = (type & WKB.EWKB_Z) != 0;
+        boolean m = (type & WKB.EWKB_M) != 0;
+        if ((type & WKB.EWKB_SRID) != 0) {
+            // The editor has no coordinate systems, so the SRID is skipped
+            require(Integer.BYTES);
+            buffer.getInt();
+        }
+        type &= ~WKB.EWKB_FLAGS;
+
+        switch (type / WKB.ISO_DIMENSION_STEP) {
+            case 0:
+                break;
+            case 1:
+                z = true;
+                break;
+            case 2:
+                m = true;
+                break;
+            case 3:
+                z = true;
+                m = true;
+                break;
+            default:
+                throw error("Unsupported wkb type " + type);
+        }
+        dimensions = 2 + (z ? 1 : 0) + (m ? 1 : 0);
+        return type % WKB.ISO_DIMENSION_STEP;
+    }
+
+    /**
+     * Reads the header of a geometry, that has to be of the given type.
+     *
+     * @param expected The expected type.
+     * @throws IOException If the geometry has a different type, or there is an error while reading from the input.
+     */
+    private void expectType(int expected) throws IOException {
+        final int type = readHeader();
+        if (type != expected) {
+            throw error("Expected wkb type " + expected + " but found " + type);
+        }
+    }
+
+    /**
+     * Reads the number of points, rings or geometries that follow.
+     *
+     * @return The count.
+     * @throws IOException If the count is out of range, or there is an error while reading from the input.
+     */
+    private int readCount() throws IOException {
+        require(Integer.BYTES);
+        final int count = buffer.getInt();
+        if (count < 0) {
+            throw error("Invalid count " + Integer.toUnsignedString(count));
+        }
+        return count;
+    }
+
+    /**
+     * Rounds a coordinate value to the closest integer.
+     *
+     * @param value The value to round.
+     * @return The coordinate value.
+     * @throws IOException If the value is out of range, or not a number, which marks empty points.
+     */
+    private int toCoordinate(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            throw error("Empty points are not supported");
+        }
+        final long rounded = Math.round(value);
+        if (rounded < Integer.MIN_VALUE || rounded > Integer.MAX_VALUE) {
+            throw error("Coordinate value out of range");
+        }
+        if (rounded != value) {
+            roundedCount++;
+        }
+        return (int) rounded;
+    }
+
+    /**
+     * Makes sure, that the buffer contains at least the given number of bytes.
+     *
+     * @param bytes The number of bytes, at most the capacity of the buffer.
+     * @throws IOException If the end of the input was reached, or there is an error while reading from the input.
+     */
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes && !fill(bytes)) {
+            throw error("Unexpected end of input");
+        }
+    }
+
+    /**
+     * Moves the remaining bytes to the start of the buffer and reads from the
+     * input, until the buffer contains the given number of bytes.
+     *
+     * @param bytes The number of bytes, at most the capacity of the buffer.
+     * @return <code>false</code> if the end of the input was reached before.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    private boolean fill(int bytes) throws IOException {
+        offset += buffer.position();
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Builds an exception describing an error at the current position.
+     *
+     * @param reason The description of the error.
+     * @return The exception to throw.
+     */
+    private IOException error(String reason) {
+        return new IOException(reason + " (byte " + getBytesRead() + ")");
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
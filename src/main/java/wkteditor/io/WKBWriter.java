@@ -0,0 +1,287 @@
+package wkteditor.io;
+
+import wkteditor.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes elements as well-known binary, one after another. The geometries are
+ * written in little endian byte order with two dimensions, which is also
+ * valid extended wkb without any flags set. Empty sub elements, that have
+ * just been started in the editor, are left out.
+ */
+public class WKBWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int POINT_SIZE = 2 * Double.BYTES;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public WKBWriter(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public WKBWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes all given elements.
+     *
+     * @param elements The elements to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public void writeElements(Collection<WKTElement> elements) throws IOException {
+        for (WKTElement element : elements) {
+            write(element);
+        }
+    }
+
+    /**
+     * Writes a single element.
+     *
+     * @param element The element to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public void write(WKTElement element) throws IOException {
+        if (element instanceof WKTPoint) {
+            WKTPoint point = (WKTPoint) element;
+            writeHeader(WKB.POINT);
+            writePoint(point.getX(), point.getY());
+        } else if (element instanceof WKTLineString) {
+            CoordinateSequence points = ((WKTLineString) element).getPoints().decompressed();
+            writeHeader(WKB.LINESTRING);
+            writePoints(points, 0, points.size(), false);
+        } else if (element instanceof WKTPolygon) {
+            writePolygon((WKTPolygon) element);
+        } else if (element instanceof WKTMultiPoint) {
+            writeMultiPoint((WKTMultiPoint) element);
+        } else if (element instanceof WKTMultiLineString) {
+            writeMultiLineString((WKTMultiLineString) element);
+        } else if (element instanceof WKTMultiPolygon) {
+            writeMultiPolygon((WKTMultiPolygon) element);
+        } else if (element instanceof WKTGeometryCollection) {
+            List<WKTElement> elements = ((WKTGeometryCollection) element).getElements();
+            writeHeader(WKB.GEOMETRYCOLLECTION);
+            writeCount(elements.size());
+            writeElements(elements);
+        } else {
+            throw new IllegalArgumentException("Unsupported element " + element.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes a polygon.
+     *
+     * @param polygon The polygon to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writePolygon(WKTPolygon polygon) throws IOException {
+        int rings = 0;
+        for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+            rings += polygon.getRingStart(ring) == polygon.getRingEnd(ring) ? 0 : 1;
+        }
+
+        CoordinateSequence points = polygon.getPoints().decompressed();
+        writeHeader(WKB.POLYGON);
+        writeCount(rings);
+        for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+            if (polygon.getRingStart(ring) != polygon.getRingEnd(ring)) {
+                writePoints(points, polygon.getRingStart(ring), polygon.getRingEnd(ring), true);
+            }
+        }
+    }
+
+    /**
+     * Writes a multi point.
+     *
+     * @param multiPoint The multi point to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writeMultiPoint(WKTMultiPoint multiPoint) throws IOException {
+        CoordinateSequence points = multiPoint.getPoints().decompressed();
+
+        writeHeader(WKB.MULTIPOINT);
+        writeCount(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            writeHeader(WKB.POINT);
+            writePoint(points.getX(i), points.getY(i));
+        }
+    }
+
+    /**
+     * Writes a multi line string.
+     *
+     * @param lines The multi line string to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writeMultiLineString(WKTMultiLineString lines) throws IOException {
+        int count = 0;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            count += lines.getStart(line) == lines.getEnd(line) ? 0 : 1;
+        }
+
+        CoordinateSequence points = lines.getPoints().decompressed();
+        writeHeader(WKB.MULTILINESTRING);
+        writeCount(count);
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            if (lines.getStart(line) != lines.getEnd(line)) {
+                writeHeader(WKB.LINESTRING);
+                writePoints(points, lines.getStart(line), lines.getEnd(line), false);
+            }
+        }
+    }
+
+    /**
+     * Writes a multi polygon.
+     *
+     * @param polygons The multi polygon to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writeMultiPolygon(WKTMultiPolygon polygons) throws IOException {
+        int count = 0;
+        for (int polygon = 0; polygon < polygons.getPolygonCount(); polygon++) {
+            count += countRings(polygons, polygon) == 0 ? 0 : 1;
+        }
+
+        CoordinateSequence points = polygons.getPoints().decompressed();
+        writeHeader(WKB.MULTIPOLYGON);
+        writeCount(count);
+        for (int polygon = 0; polygon < polygons.getPolygonCount(); polygon++) {
+            final int rings = countRings(polygons, polygon);
+            if (rings == 0) {
+                continue;
+            }
+
+            writeHeader(WKB.POLYGON);
+            writeCount(rings);
+            for (int ring = polygons.getPolygonStart(polygon); ring < polygons.getPolygonEnd(polygon); ring++) {
+                if (polygons.getRingStart(ring) != polygons.getRingEnd(ring)) {
+                    writePoints(points, polygons.getRingStart(ring), polygons.getRingEnd(ring), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the rings of a polygon in a multi polygon, that are not empty.
+     *
+     * @param polygons The multi polygon.
+     * @param polygon  The index of the polygon.
+     * @return The number of rings with points.
+     */
+    private static int countRings(WKTMultiPolygon polygons, int polygon) {
+        int rings = 0;
+        for (int ring = polygons.getPolygonStart(polygon); ring < polygons.getPolygonEnd(polygon); ring++) {
+            rings += polygons.getRingStart(ring) == polygons.getRingEnd(ring) ? 0 : 1;
+        }
+        return rings;
+    }
+
+    /**
+     * Writes a range of points from a sequence, preceded by their number.
+     *
+     * @param points The sequence containing the points.
+     * @param from   The index of the first point (inclusive).
+     * @param to     The index of the last point (exclusive).
+     * @param ring   Whether the first point is repeated at the end, as
+     *               required for the rings of polygons.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writePoints(CoordinateSequence points, int from, int to, boolean ring) throws IOException {
+        writeCount(to - from + (ring ? 1 : 0));
+        for (int i = from; i < to; i++) {
+            writePoint(points.getX(i), points.getY(i));
+        }
+        if (ring) {
+            writePoint(points.getX(from), points.getY(from));
+        }
+    }
+
+    /**
+     * Writes the header of a geometry, consisting of the byte order and the type.
+     *
+     * @param type The type of the geometry.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writeHeader(int type) throws IOException {
+        require(1 + Integer.BYTES);
+        buffer.put(WKB.LITTLE_ENDIAN);
+        buffer.putInt(type);
+    }
+
+    /**
+     * Writes the number of points, rings or geometries that follow.
+     *
+     * @param count The count.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writeCount(int count) throws IOException {
+        require(Integer.BYTES);
+        buffer.putInt(count);
+    }
+
+    /**
+     * Writes the coordinates of a single point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void writePoint(int x, int y) throws IOException {
+        require(POINT_SIZE);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+    }
+
+    /**
+     * Makes sure, that the buffer has space for the given number of bytes.
+     *
+     * @param bytes The number of bytes.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the channel.
+     *
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package wkteditor.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a wkt character stream into the tokens needed by the {@link WKTReader}.
+ * The lexer reads directly from its own buffer and parses numbers into
+ * primitive values, so no objects are created per coordinate. Decimal
+ * numbers are converted by the {@link FastDoubleParser}.
+ */
+final class WKTLexer implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final int MAX_MANTISSA_DIGITS = 19;
+    private static final int MAX_EXPONENT = 100000;
+    private static final String EMPTY = "EMPTY";
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+    /**
+     * The number of characters read before the current buffer content.
+     */
+    private long offset;
+    private int line;
+    /**
+     * The offset of the first character of the current line.
+     */
+    private long lineStart;
+    private long roundedCount;
+
+    WKTLexer(Reader reader) {
+        this.reader = reader;
+        buffer = new char[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+        offset = 0;
+        line = 1;
+        lineStart = 0;
+        roundedCount = 0;
+    }
+
+    /**
+     * Refills the buffer, if all characters have been consumed.
+     *
+     * @return <code>false</code> if the end of the input was reached.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+
+        offset += limit;
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        pos = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Skips all whitespace characters and returns the next character without
+     * consuming it.
+     *
+     * @return The next non-whitespace character, or <code>-1</code> if the end of the input was reached.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    int peek() throws IOException {
+        while (fill()) {
+            char c = buffer[pos];
+            if (!isWhitespace(c)) {
+                return c;
+            }
+            if (c == '\n') {
+                line++;
+                lineStart = offset + pos + 1;
+            }
+            pos++;
+        }
+        return EOF;
+    }
+
+    /**
+     * Consumes the next non-whitespace character, if it is the specified one.
+     *
+     * @param c The character to consume.
+     * @return <code>true</code> if the character was consumed.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    boolean consume(char c) throws IOException {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the next non-whitespace character, which has to be the specified one.
+     *
+     * @param c The expected character.
+     * @throws IOException If the next character is a different one, or there is an error while reading from the
+     *                     input.
+     */
+    void expect(char c) throws IOException {
+        if (!consume(c)) {
+            throw unexpected("'" + c + "'");
+        }
+    }
+
+    /**
+     * Reads a word consisting of letters, such as the type of a wkt element.
+     *
+     * @return The read word, or <code>null</code> if the end of the input was reached.
+     * @throws IOException If the next token is not a word, or there is an error while reading from the input.
+     */
+    String readWord() throws IOException {
+        if (peek() == EOF) {
+            return null;
+        }
+
+        StringBuilder word = new StringBuilder();
+        while (fill() && isLetter(buffer[pos])) {
+            word.append(buffer[pos++]);
+        }
+
+        if (word.length() == 0) {
+            throw unexpected("wkt type");
+        }
+        return word.toString();
+    }
+
+    /**
+     * Consumes the word <code>EMPTY</code>, if it is next. It can be given in
+     * place of the parenthesized content of an element. Other words are not
+     * allowed at this position.
+     *
+     * @return <code>true</code> if the word was consumed.
+     * @throws IOException If the next token is a different word, or there is an error while reading from the input.
+     */
+    boolean consumeEmpty() throws IOException {
+        int c = peek();
+        if (c == EOF || !isLetter((char) c)) {
+            return false;
+        }
+
+        String word = readWord();
+        if (!EMPTY.equals(word)) {
+            throw error("Expected '(' or " + EMPTY + " but found " + word);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a coordinate value. Values may be given as integers, decimals or
+     * in scientific notation. As the editor works with integer coordinates,
+     * other values are rounded to the closest integer, and counted, see
+     * {@link #getRoundedCount()}.
+     *
+     * @return The read coordinate value.
+     * @throws IOException If the next token is not a number, the number is out of range, or there is an error while
+     *                     reading from the input.
+     */
+    int readCoordinate() throws IOException {
+        int c = peek();
+        final boolean negative = c == '-';
+        if (negative || c == '+') {
+            pos++;
+        }
+
+        // Fast path for integers, which cannot overflow the long value
+        long value = 0;
+        int digits = 0;
+        while (fill()) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (digits == MAX_FAST_DIGITS) {
+                return readDecimal(negative, value, digits);
+            }
+            value = value * 10 + digit;
+            digits++;
+            pos++;
+        }
+
+        if (fill() && (buffer[pos] == '.' || buffer[pos] == 'e' || buffer[pos] == 'E')) {
+            return readDecimal(negative, value, digits);
+        }
+        if (digits == 0) {
+            throw unexpected("coordinate value");
+        }
+        return toCoordinate(negative ? -value : value);
+    }
+
+    /**
+     * Continues reading a coordinate value, that is not a short integer.
+     *
+     * @param negative Whether the value is negative.
+     * @param value    The value of the integer digits read so far.
+     * @param digits   The number of integer digits read so far.
+     * @return The read coordinate value, rounded to the closest integer.
+     * @throws IOException If the next token is not a number, the number is out of range, or there is an error while
+     *                     reading from the input.
+     */
+    private int readDecimal(boolean negative, long value, int digits) throws IOException {
+        // The digits are collected as an unsigned value, which can hold 19
+        // decimal digits. Further digits only adjust the exponent. Leading
+        // zeros do not take up any of these digits.
+        long mantissa = value;
+        int significantDigits = 0;
+        for (long rest = value; rest != 0; rest /= 10) {
+            significantDigits++;
+        }
+        int exponent = 0;
+        boolean truncated = false;
+
+        while (fill()) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (significantDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                significantDigits += mantissa == 0 ? 0 : 1;
+            } else {
+                exponent++;
+                truncated |= digit != 0;
+            }
+            digits++;
+            pos++;
+        }
+
+        if (fill() && buffer[pos] == '.') {
+            pos++;
+
+            while (fill()) {
+                int digit = buffer[pos] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (significantDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    significantDigits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                } else {
+                    truncated |= digit != 0;
+                }
+                digits++;
+                pos++;
+            }
+        }
+
+        if (digits == 0) {
+            throw unexpected("coordinate value");
+        }
+
+        if (fill() && (buffer[pos] == 'e' || buffer[pos] == 'E')) {
+            pos++;
+            exponent += readExponent();
+        }
+
+        final double coordinate = FastDoubleParser.toDouble(negative, mantissa, exponent, truncated);
+        // Values too large for a long are clamped by round and rejected as well
+        final long rounded = Math.round(coordinate);
+        if (rounded != coordinate) {
+            roundedCount++;
+        }
+        return toCoordinate(rounded);
+    }
+
+    /**
+     * Gets the number of coordinate values read so far, that had decimals and
+     * have been rounded, see {@link #readCoordinate()}.
+     *
+     * @return The number of rounded values.
+     */
+    long getRoundedCount() {
+        return roundedCount;
+    }
+
+    /**
+     * Reads the exponent of a number in scientific notation, following the 'e'.
+     *
+     * @return The exponent.
+     * @throws IOException If the exponent has no digits, or there is an error while reading from the input.
+     */
+    private int readExponent() throws IOException {
+        boolean negative = false;
+        if (fill() && (buffer[pos] == '-' || buffer[pos] == '+')) {
+            negative = buffer[pos] == '-';
+            pos++;
+        }
+
+        int exponent = 0;
+        int digits = 0;
+        while (fill()) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            // Larger exponents are out of range anyway, just prevent an overflow
+            if (exponent < MAX_EXPONENT) {
+                exponent = exponent * 10 + digit;
+            }
+            digits++;
+            pos++;
+        }
+
+        if (digits == 0) {
+            throw unexpected("exponent");
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * Checks that the value is within the range of a coordinate.
+     *
+     * @param value The value to check.
+     * @return The coordinate value.
+     * @throws IOException If the value is out of range.
+     */
+    private int toCoordinate(long value) throws IOException {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("Coordinate value out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Checks whether the next character is the first character of a line and
+     * a letter. Such a character is considered to start the next record of
+     * the input, which is where reading can continue after an error.
+     *
+     * @return <code>true</code> if the next character starts a record.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    boolean isAtRecordStart() throws IOException {
+        return fill() && offset + pos == lineStart && isLetter(buffer[pos]);
+    }
+
+    /**
+     * Skips all characters up to the start of the next record.
+     *
+     * @throws IOException If there is an error while reading from the input.
+     * @see #isAtRecordStart()
+     */
+    void skipToNextRecord() throws IOException {
+        boolean newline = false;
+        while (fill()) {
+            char c = buffer[pos];
+            if (newline && isLetter(c)) {
+                return;
+            }
+            newline = c == '\n';
+            if (newline) {
+                line++;
+                lineStart = offset + pos + 1;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Checks whether the end of the input was reached.
+     *
+     * @return <code>true</code> if there are no more characters other than whitespace.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    boolean isAtEnd() throws IOException {
+        return peek() == EOF;
+    }
+
+    /**
+     * Gets the line of the next character.
+     *
+     * @return The line number, starting with <code>1</code>.
+     */
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Builds an exception describing an error at the current position.
+     *
+     * @param reason The description of the error.
+     * @return The exception to throw.
+     */
+    WKTParseException error(String reason) {
+        return new WKTParseException(reason, line, (int) (offset + pos - lineStart) + 1);
+    }
+
+    /**
+     * Builds the exception thrown when the input does not contain the expected token.
+     *
+     * @param expected A description of the expected token.
+     * @return The exception to throw.
+     * @throws IOException If there is an error while reading from the input.
+     */
+    private WKTParseException unexpected(String expected) throws IOException {
+        int c = peek();
+        String found = c == EOF ? "end of input" : "'" + (char) c + "'";
+        return error("Expected " + expected + " but found " + found);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || Character.isWhitespace(c);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,67 @@
+package wkteditor.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the wkt input is malformed. The exception knows the position
+ * in the input, at which the error was detected.
+ */
+public class WKTParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+    private final int line;
+    private final int column;
+
+    public WKTParseException(String reason, int line, int column) {
+        super(reason + " (line " + line + ", column " + column + ")");
+        this.reason = reason;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Gets the description of the error, without the position.
+     *
+     * @return The description of the error.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the line at which the error was detected.
+     *
+     * @return The line number, starting with <code>1</code>.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Gets the column at which the error was detected.
+     *
+     * @return The column number, starting with <code>1</code>.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Creates a copy of this exception, that is moved down by the given number
+     * of lines. This is used when the input was read in parts.
+     *
+     * @param lines The number of lines preceding the part this exception was thrown for.
+     * @return The moved exception.
+     */
+    WKTParseException moveDown(int lines) {
+        return new WKTParseException(reason, line + lines, column);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // The position in the input is what matters. Skipping the stack trace
+        // keeps lenient reading of inputs with many errors fast.
+        return this;
+    }
+}
@@ -1,27 +1,152 @@
 package wkteditor.io;
 
-import wkteditor.WKTElement;
-import wkteditor.WKTLineString;
-import wkteditor.WKTPoint;
-import wkteditor.WKTPolygon;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import wkteditor.*;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads wkt elements from a character stream. Elements can either be pulled
+ * one at a time with {@link #readElement()}, iterated over, or all be read at
+ * once with {@link #readElements()}. Only the first two keep the memory usage
+ * independent of the size of the input.
+ * <p>
+ * By default, reading stops with a {@link WKTParseException} at the first
+ * malformed element. In lenient mode, malformed elements are skipped up to
+ * the next line starting with a letter instead, and the errors are collected
+ * as rejects.
+ */
+public class WKTReader implements Closeable, Iterable<WKTElement> {
+    /**
+     * The maximum number of rejects, that are kept for reporting. Further
+     * rejects are only counted.
+     */
+    public static final int MAX_REPORTED_REJECTS = 100;
+    private static final int MAX_COLLECTION_DEPTH = 64;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
 
-public class WKTReader implements Closeable {
-    private BufferedReader reader;
+    private final WKTLexer lexer;
     private boolean eof;
+    private boolean lenient;
+    private boolean incomplete;
+    private long rejectCount;
+    private final List<WKTParseException> rejects;
 
     public WKTReader(Reader reader) {
-        this.reader = new BufferedReader(reader);
+        this.lexer = new WKTLexer(reader);
         eof = false;
+        lenient = false;
+        incomplete = false;
+        rejectCount = 0;
+        rejects = new ArrayList<>();
+    }
+
+    /**
+     * Creates a reader for the given file. Files ending in
+     * <code>.wkt.gz</code> are decompressed while reading, on a separate
+     * thread.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file can not be opened.
+     */
+    public WKTReader(File file) throws IOException {
+        this(openFile(file));
+    }
+
+    /**
+     * Opens a file for reading wkt data, which is decoded as UTF-8.
+     *
+     * @param file The file to open.
+     * @return The reader for the content of the file.
+     * @throws IOException If the file can not be opened.
+     */
+    private static Reader openFile(File file) throws IOException {
+        if (FileFormat.of(file) != FileFormat.WKT_GZ) {
+            return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            in = new ReadAheadInputStream(new GZIPInputStream(in, GZIP_BUFFER_SIZE));
+        } catch (IOException exception) {
+            in.close();
+            throw exception;
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sets whether malformed elements are skipped instead of stopping the
+     * reading with an exception.
+     *
+     * @param lenient <code>true</code> to skip malformed elements.
+     */
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * Checks whether malformed elements are skipped instead of stopping the
+     * reading with an exception.
+     *
+     * @return <code>true</code> if malformed elements are skipped.
+     */
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    /**
+     * Gets the number of malformed elements, that have been skipped so far.
+     *
+     * @return The number of skipped elements.
+     */
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    /**
+     * Gets the number of coordinate values, that had decimals and have been
+     * rounded to integers so far. Writing the elements back loses these
+     * decimals.
+     *
+     * @return The number of rounded values.
+     */
+    public long getRoundedCount() {
+        return lexer.getRoundedCount();
+    }
+
+    /**
+     * Gets the errors of the skipped elements. Only the first
+     * {@value #MAX_REPORTED_REJECTS} errors are kept.
+     *
+     * @return The errors of the skipped elements, in the order of the input.
+     */
+    public List<WKTParseException> getRejects() {
+        return Collections.unmodifiableList(rejects);
+    }
+
+    /**
+     * Checks whether the last element was cut off by the end of the input.
+     * This can only be the case in lenient mode, otherwise an exception is
+     * thrown.
+     *
+     * @return <code>true</code> if the last element was incomplete.
+     */
+    boolean isIncomplete() {
+        return incomplete;
     }
 
-    public WKTReader(File file) throws FileNotFoundException {
-        this(new FileReader(file));
+    /**
+     * Gets the number of lines, that have been read so far.
+     *
+     * @return The number of lines read.
+     */
+    int getLineCount() {
+        return lexer.getLine();
     }
 
     /**
@@ -34,218 +159,367 @@ public class WKTReader implements Closeable {
 
         WKTElement element;
 
-        while (!eof) {
-            element = readElement();
-            if (element != null) {
-                elements.add(element);
-            }
+        while ((element = readElement()) != null) {
+            elements.add(element);
         }
 
         return elements;
     }
 
-    private WKTElement readElement() throws IOException {
-        String type = readNextType();
-        if (type == null) {
+    /**
+     * Reads the next element from the input. Only the returned element is kept
+     * in memory, so this can be used to process inputs of arbitrary size.
+     *
+     * @return The next element, or <code>null</code> if the end of the input was reached.
+     * @throws IOException If there is an error while reading the element.
+     */
+    @Nullable
+    public WKTElement readElement() throws IOException {
+        WKTElement element = null;
+
+        while (!eof && element == null) {
+            element = readNextElement();
+        }
+
+        return element;
+    }
+
+    /**
+     * Gets an iterator, that reads the elements from the input one by one.
+     * The input can only be iterated once, as the iterator consumes it.
+     * Errors while reading are rethrown as {@link UncheckedIOException}.
+     *
+     * @return An iterator over the remaining elements of the input.
+     */
+    @NotNull
+    @Override
+    public Iterator<WKTElement> iterator() {
+        return new Iterator<WKTElement>() {
+            private WKTElement next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readElement();
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public WKTElement next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                WKTElement element = next;
+                next = null;
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Reads the next element from the input. In lenient mode, a malformed
+     * element is recorded as reject and skipped.
+     *
+     * @return The next element, or <code>null</code> if the element was skipped or the end of the input was reached.
+     * @throws IOException If there is an error while reading the element.
+     */
+    private WKTElement readNextElement() throws IOException {
+        if (lexer.isAtEnd()) {
+            eof = true;
+            return null;
+        }
+
+        if (!lenient) {
+            return parseElement();
+        }
+
+        final int startLine = lexer.getLine();
+        try {
+            return parseElement();
+        } catch (WKTParseException exception) {
+            reject(exception);
+
+            if (lexer.isAtEnd()) {
+                incomplete = true;
+            } else if (lexer.getLine() == startLine || !lexer.isAtRecordStart()) {
+                // The error might have been detected at the start of the next
+                // record already, which must not be skipped then
+                lexer.skipToNextRecord();
+            }
             return null;
         }
+    }
+
+    /**
+     * Records a malformed element, that is skipped.
+     *
+     * @param exception The error of the element.
+     */
+    private void reject(WKTParseException exception) {
+        rejectCount++;
+        if (rejects.size() < MAX_REPORTED_REJECTS) {
+            rejects.add(exception);
+        }
+    }
+
+    /**
+     * Parses the next element from the input.
+     *
+     * @return The parsed element.
+     * @throws IOException If the element is malformed, or there is an error while reading from the input.
+     */
+    private WKTElement parseElement() throws IOException {
+        return parseElement(0);
+    }
+
+    /**
+     * Parses the next element from the input, which might be nested in
+     * geometry collections.
+     *
+     * @param depth The number of enclosing geometry collections.
+     * @return The parsed element.
+     * @throws IOException If the element is malformed, or there is an error while reading from the input.
+     */
+    private WKTElement parseElement(int depth) throws IOException {
+        String type = lexer.readWord();
+        if (type == null) {
+            throw lexer.error("Expected wkt type but found end of input");
+        }
 
         switch (type) {
             case "POINT":
-                return parsePoint(readNestedContent());
+                return parsePoint();
             case "LINESTRING":
-                return parseLineString(readNestedContent());
+                return parseLineString();
             case "POLYGON":
-                return parsePolygon(readNestedContent());
+                return parsePolygon();
+            case "MULTIPOINT":
+                return parseMultiPoint();
+            case "MULTILINESTRING":
+                return parseMultiLineString();
+            case "MULTIPOLYGON":
+                return parseMultiPolygon();
+            case "GEOMETRYCOLLECTION":
+                return parseGeometryCollection(depth);
             default:
-                return null;
+                throw lexer.error("Unsupported wkt type " + type);
         }
     }
 
     /**
-     * Parses a wkt point form the given data.
+     * Parses a wkt point from the input.
      *
-     * @param content The wkt content of the point type.
      * @return The parsed point.
-     * @throws IOException If the content is not a polygon.
+     * @throws IOException If the content is not a point.
      */
-    private WKTPoint parsePoint(String content) throws IOException {
-        Scanner scanner = new Scanner(content);
-        scanner.useDelimiter("\\s+");
-        int x, y;
-
-        try {
-            x = scanner.nextInt();
-            y = scanner.nextInt();
-        } catch (NoSuchElementException | IllegalStateException exception) {
-            throw new IOException("Bad coordinate values: " + content, exception);
-        }
+    private WKTPoint parsePoint() throws IOException {
+        lexer.expect('(');
+        WKTPoint point = new WKTPoint(lexer.readCoordinate(), lexer.readCoordinate());
+        lexer.expect(')');
 
-
-        return new WKTPoint(x, y);
+        return point;
     }
 
     /**
-     * Parses a wkt line string from the given data.
+     * Parses a wkt line string from the input.
      *
-     * @param content The wkt content of the line string type.
      * @return The parsed line.
      * @throws IOException If the content is not a line string.
      */
-    private WKTLineString parseLineString(String content) throws IOException {
-        Scanner scanner = new Scanner(content);
-        scanner.useDelimiter(",");
-
+    private WKTLineString parseLineString() throws IOException {
         WKTLineString line = new WKTLineString();
-        while (scanner.hasNext()) {
-            line.add(parsePoint(scanner.next()));
+
+        if (!lexer.consumeEmpty()) {
+            parsePath(line);
         }
 
         return line;
     }
 
     /**
-     * Parses a wkt polygon from the given data.
+     * Parses a wkt polygon from the input.
      *
-     * @param content The wkt content of the polygon type.
      * @return The parsed polygon.
      * @throws IOException If the content is not a polygon.
      */
-    private WKTPolygon parsePolygon(String content) throws IOException {
-        Scanner polyScanner = new Scanner(content);
-        polyScanner.useDelimiter(",(?![^(]*\\))");
-
+    private WKTPolygon parsePolygon() throws IOException {
         WKTPolygon polygon = new WKTPolygon();
-        while (polyScanner.hasNext()) {
-            String subPoly = polyScanner.next();
-            // Remove parenthesis
-            subPoly = subPoly.substring(subPoly.indexOf('(') + 1).substring(0, subPoly.lastIndexOf(')') - 1);
-            Scanner subPolyScanner = new Scanner(subPoly);
-            subPolyScanner.useDelimiter("\\s*,\\s*");
-
-            while (subPolyScanner.hasNext()) {
-                polygon.add(parsePoint(subPolyScanner.next()));
-            }
 
-            if (polyScanner.hasNext()) {
-                polygon.endSubElement();
-            }
+        if (!lexer.consumeEmpty()) {
+            parseRings(polygon);
         }
 
         return polygon;
     }
 
-    private String readNestedContent() throws IOException {
-        StringBuilder content = new StringBuilder();
-        char c = '\0';
-
-        skipUntil('(');
-        int openParenthesis = 1;
-        while (c != (char) -1 && openParenthesis > 0) {
-            c = (char) reader.read();
-
-            if (c == '(') {
-                openParenthesis++;
-            }
-            if (c == ')') {
-                openParenthesis--;
-            }
-
-            if (c != (char) -1) {
-                content.append(c);
-            }
-        }
-
-        if (c == (char) -1) {
-            eof = true;
+    /**
+     * Parses a wkt multi point from the input. The points may be enclosed in
+     * parenthesis each or not, as both forms are in use.
+     *
+     * @return The parsed multi point.
+     * @throws IOException If the content is not a multi point.
+     */
+    private WKTMultiPoint parseMultiPoint() throws IOException {
+        WKTMultiPoint multiPoint = new WKTMultiPoint();
+
+        if (!lexer.consumeEmpty()) {
+            lexer.expect('(');
+            do {
+                boolean enclosed = lexer.consume('(');
+                multiPoint.add(lexer.readCoordinate(), lexer.readCoordinate());
+                if (enclosed) {
+                    lexer.expect(')');
+                }
+            } while (lexer.consume(','));
+            lexer.expect(')');
         }
 
-        // Remove last closing parenthesis
-        content.deleteCharAt(content.length() - 1);
-        return content.toString();
+        return multiPoint;
     }
 
     /**
-     * Reads the next wkt type from the reader.
+     * Parses a wkt multi line string from the input.
      *
-     * @return The next type, or <code>null</code> if the end of the file was reached.
-     * @throws IOException If there is an error while reading the next type.
+     * @return The parsed multi line string.
+     * @throws IOException If the content is not a multi line string.
      */
-    private String readNextType() throws IOException {
-        String type = null;
+    private WKTMultiLineString parseMultiLineString() throws IOException {
+        WKTMultiLineString lines = new WKTMultiLineString();
+
+        if (!lexer.consumeEmpty()) {
+            lexer.expect('(');
+            do {
+                lines.endSubElement();
+                if (!lexer.consumeEmpty()) {
+                    parsePath(lines);
+                }
+            } while (lexer.consume(','));
+            lexer.expect(')');
+        }
 
-        while (!eof && type == null) {
-            type = readWord();
+        return lines;
+    }
 
-            if (type.isEmpty()) {
-                // Skip empty lines
-                type = null;
-            }
+    /**
+     * Parses a wkt multi polygon from the input.
+     *
+     * @return The parsed multi polygon.
+     * @throws IOException If the content is not a multi polygon.
+     */
+    private WKTMultiPolygon parseMultiPolygon() throws IOException {
+        WKTMultiPolygon polygons = new WKTMultiPolygon();
+
+        if (!lexer.consumeEmpty()) {
+            lexer.expect('(');
+            do {
+                polygons.endPolygon();
+                if (!lexer.consumeEmpty()) {
+                    parseRings(polygons);
+                }
+            } while (lexer.consume(','));
+            lexer.expect(')');
         }
 
-        return type;
+        return polygons;
     }
 
     /**
-     * Reads a single word from the reade. A word is defined by an arbitrary sequence of characters separated by
-     * whitespaces.
+     * Parses a wkt geometry collection from the input.
      *
-     * @return The read word.
-     * @throws IOException If there is an error while reading the word.
+     * @param depth The number of enclosing geometry collections.
+     * @return The parsed geometry collection.
+     * @throws IOException If the content is not a geometry collection, or the collections are nested too deeply.
      */
-    private String readWord() throws IOException {
-        StringBuilder builder = new StringBuilder();
-        char c = skipWhitespace();
-
-        while (!Character.isWhitespace(c) && c != (char) -1) {
-            builder.append(c);
-            c = (char) reader.read();
+    private WKTGeometryCollection parseGeometryCollection(int depth) throws IOException {
+        if (depth == MAX_COLLECTION_DEPTH) {
+            throw lexer.error("Geometry collections nested too deeply");
         }
-
-        if (c == (char) -1) {
-            eof = true;
+        WKTGeometryCollection collection = new WKTGeometryCollection();
+
+        if (!lexer.consumeEmpty()) {
+            lexer.expect('(');
+            do {
+                collection.add(parseElement(depth + 1));
+            } while (lexer.consume(','));
+            lexer.expect(')');
         }
-        return builder.toString();
+
+        return collection;
     }
 
     /**
-     * Skips all whitespace characters.
+     * Parses a parenthesized list of points from the input and adds them to
+     * the current sub element.
      *
-     * @return First non-whitespace character.
-     * @throws IOException If there is an error while skipping the whitespace.
+     * @param element The element to add the points to.
+     * @throws IOException If the content is not a list of points.
      */
-    private char skipWhitespace() throws IOException {
-        char c;
-
+    private void parsePath(WKTElement element) throws IOException {
+        lexer.expect('(');
         do {
-            c = (char) reader.read();
-        } while (Character.isWhitespace(c) && c != (char) -1);
-
-        return c;
+            element.add(lexer.readCoordinate(), lexer.readCoordinate());
+        } while (lexer.consume(','));
+        lexer.expect(')');
     }
 
     /**
-     * Reads characters and skips to the first occurrence of the specified character. The next character read after
-     * calling this function will be the first character after the specified character.
+     * Parses the parenthesized rings of a polygon from the input. Each ring
+     * after the first one is added as a new sub element.
      *
-     * @param until The character to skip to.
-     * @throws IOException If there is an error while skipping until the character.
+     * @param element The element to add the rings to.
+     * @throws IOException If the content is not a list of rings.
      */
-    private void skipUntil(char until) throws IOException {
-        char c;
-        do {
-            c = (char) reader.read();
-        } while (c != (char) -1 && c != until);
+    private void parseRings(WKTElement element) throws IOException {
+        lexer.expect('(');
+        parseRing(element);
+        while (lexer.consume(',')) {
+            element.endSubElement();
+            parseRing(element);
+        }
+        lexer.expect(')');
+    }
 
-        if (c == (char) -1) {
-            eof = true;
+    /**
+     * Parses a single ring of a wkt polygon from the input and adds its points
+     * to the current sub-polygon. The points are added while they are read,
+     * one point behind, so that the closing point, which repeats the first
+     * one, can be left out. Polygons close their sub-polygons implicitly.
+     *
+     * @param polygon The polygon to add the points to.
+     * @throws IOException If the content is not a ring.
+     */
+    private void parseRing(WKTElement polygon) throws IOException {
+        lexer.expect('(');
+        final int firstX = lexer.readCoordinate();
+        final int firstY = lexer.readCoordinate();
+        polygon.add(firstX, firstY);
+
+        boolean pending = false;
+        int x = 0;
+        int y = 0;
+        while (lexer.consume(',')) {
+            if (pending) {
+                polygon.add(x, y);
+            }
+            x = lexer.readCoordinate();
+            y = lexer.readCoordinate();
+            pending = true;
+        }
+        if (pending && (x != firstX || y != firstY)) {
+            polygon.add(x, y);
         }
+        lexer.expect(')');
     }
 
     @Override
     public void close() throws IOException {
-        if (reader != null) {
-            reader.close();
+        if (lexer != null) {
+            lexer.close();
         }
     }
 }
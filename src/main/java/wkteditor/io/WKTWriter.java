@@ -0,0 +1,217 @@
+package wkteditor.io;
+
+import wkteditor.WKTElement;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes wkt elements, one per line. The elements write themselves into this
+ * writer with {@link WKTElement#writeWKT(Appendable)}. The characters go
+ * straight into a byte buffer, and coordinates are formatted into it without
+ * creating strings, so writing creates no objects per element or coordinate.
+ * The buffer is written to the channel whenever it is full.
+ * <p>
+ * Wkt consists of ASCII characters only. Other characters are written as
+ * <code>'?'</code>.
+ */
+public class WKTWriter implements Appendable, Flushable, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The maximum length of a formatted integer, "-2147483648".
+     */
+    private static final int MAX_INT_LENGTH = 11;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+
+    /**
+     * Creates a writer for the given file. Files ending in
+     * <code>.wkt.gz</code> are compressed with gzip.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file can not be opened.
+     */
+    public WKTWriter(File file) throws IOException {
+        this(openFile(file));
+    }
+
+    public WKTWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        bytes = buffer.array();
+    }
+
+    /**
+     * Opens a file for writing wkt data.
+     *
+     * @param file The file to open.
+     * @return The channel to the file.
+     * @throws IOException If the file can not be opened.
+     */
+    private static WritableByteChannel openFile(File file) throws IOException {
+        if (FileFormat.of(file) != FileFormat.WKT_GZ) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            return Channels.newChannel(new GZIPOutputStream(out, BUFFER_SIZE));
+        } catch (IOException exception) {
+            out.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes all given elements.
+     *
+     * @param elements The elements to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public void writeElements(Collection<WKTElement> elements) throws IOException {
+        for (WKTElement element : elements) {
+            write(element);
+        }
+    }
+
+    /**
+     * Writes a single element, followed by a line break.
+     *
+     * @param element The element to write.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public void write(WKTElement element) throws IOException {
+        element.writeWKT(this);
+        append('\n');
+    }
+
+    /**
+     * Appends the coordinates of a point, separated by a space, to the given
+     * output. Elements use this in {@link WKTElement#writeWKT(Appendable)},
+     * so the coordinates are formatted without creating strings if the output
+     * is a wkt writer or a string builder.
+     *
+     * @param out The output to append to.
+     * @param x   The x-coordinate of the point.
+     * @param y   The y-coordinate of the point.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public static void appendCoordinate(Appendable out, int x, int y) throws IOException {
+        if (out instanceof WKTWriter) {
+            WKTWriter writer = (WKTWriter) out;
+            writer.appendInt(x);
+            writer.append(' ');
+            writer.appendInt(y);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(x).append(' ').append(y);
+        } else {
+            out.append(Integer.toString(x)).append(' ').append(Integer.toString(y));
+        }
+    }
+
+    /**
+     * Appends the decimal representation of an integer.
+     *
+     * @param value The integer to append.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    public void appendInt(int value) throws IOException {
+        require(MAX_INT_LENGTH);
+        int pos = buffer.position();
+        if (value < 0) {
+            bytes[pos++] = '-';
+        }
+
+        // Work with the negative value, which can also hold Integer.MIN_VALUE
+        final int negative = value < 0 ? value : -value;
+        int end = pos + 1;
+        for (int rest = negative / 10; rest != 0; rest /= 10) {
+            end++;
+        }
+
+        int rest = negative;
+        for (int i = end - 1; i >= pos; i--) {
+            bytes[i] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        }
+        buffer.position(end);
+    }
+
+    @Override
+    public WKTWriter append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public WKTWriter append(CharSequence csq, int start, int end) throws IOException {
+        for (int i = start; i < end; ) {
+            require(1);
+            final int count = Math.min(end - i, buffer.remaining());
+            int pos = buffer.position();
+            for (int last = i + count; i < last; i++) {
+                bytes[pos++] = toAscii(csq.charAt(i));
+            }
+            buffer.position(pos);
+        }
+        return this;
+    }
+
+    @Override
+    public WKTWriter append(char c) throws IOException {
+        require(1);
+        buffer.put(toAscii(c));
+        return this;
+    }
+
+    private static byte toAscii(char c) {
+        return c < 0x80 ? (byte) c : (byte) '?';
+    }
+
+    /**
+     * Makes sure, that the buffer has space for the given number of bytes.
+     *
+     * @param count The number of bytes.
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void require(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the channel.
+     *
+     * @throws IOException If there is an error while writing to the output.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -3,7 +3,10 @@ package wkteditor.ui;
 import org.jetbrains.annotations.Nullable;
 import wkteditor.CursorMode;
 import wkteditor.WKTEditor;
+import wkteditor.io.FileFormat;
+import wkteditor.io.WKTParseException;
 import wkteditor.ui.filefilter.ImageFileFilter;
+import wkteditor.ui.filefilter.WkbFileFilter;
 import wkteditor.ui.filefilter.WktFileFilter;
 
 import javax.imageio.ImageIO;
@@ -15,6 +18,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 /**
  * This frame displays the currently edited wkt file and provides UI elements
@@ -24,18 +28,23 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
     private static final String AC_OPEN = "actionCommand:open";
     private static final String AC_SAVE = "actionCommand:save";
     private static final String AC_SAVE_AS = "actionCommand:saveAs";
+    private static final String AC_COLUMNAR_STORAGE = "actionCommand:columnarStorage";
+    private static final String AC_SPATIAL_ORDER = "actionCommand:spatialOrder";
     public static final String AC_CURSOR_SELECT = "actionCommand:cursorSelect";
     public static final String AC_CURSOR_POINT = "actionCommand:cursorPoint";
     public static final String AC_CURSOR_LINE = "actionCommand:cursorLine";
     public static final String AC_CURSOR_POLYGON = "actionCommand:cursorPolygon";
     private static final String AC_END_ELEMENT = "actionCommand:endElement";
     private static final String AC_END_SUB_ELEMENT = "actionCommand:endSubElement";
+    private static final String AC_DELETE = "actionCommand:delete";
+    private static final String AC_SNAPPING = "actionCommand:snapping";
     private static final String AC_SET_BG_IMAGE = "actionCommand:setBgImage";
     private static final String AC_REMOVE_BG_IMAGE = "actionCommand:removeBgImage";
     private static final String AC_ZOOM_IN = "actionCommand:zoom.in";
     private static final String AC_ZOOM_OUT = "actionCommand:zoom.out";
     private static final String AC_ZOOM_RESET = "actionCommand:zoom.reset";
     private static final String AC_VIEW_RESET = "actionCommand:view.reset";
+    private static final int MAX_DISPLAYED_REJECTS = 10;
 
     private ResourceBundle strings;
     private WKTEditor editor;
@@ -75,17 +84,12 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
 
                     switch (result) {
                         case 0:
-                            // Save
-                            if (saveWkt(editor.getOpenFile())) {
-                                // Save succeeded
-                                dispose();
-                                editor.shutdown();
-                            }
+                            // Save, and close when the save succeeded
+                            saveWkt(editor.getOpenFile(), WKTFrame.this::exit);
                             break;
                         case 2:
                             // Don't save
-                            dispose();
-                            editor.shutdown();
+                            exit();
                             break;
                         default:
                             // Cancel, or close dialog
@@ -93,8 +97,7 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
                             break;
                     }
                 } else {
-                    dispose();
-                    editor.shutdown();
+                    exit();
                 }
             }
         });
@@ -140,6 +143,21 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
         menuFileSaveAs.addActionListener(this);
         menuFile.add(menuFileSaveAs);
 
+        menuFile.addSeparator();
+
+        JCheckBoxMenuItem menuFileColumnar = new JCheckBoxMenuItem(strings.getString("menu.file.columnarStorage"));
+        menuFileColumnar.setSelected(editor.isColumnarStorage());
+        menuFileColumnar.setActionCommand(AC_COLUMNAR_STORAGE);
+        menuFileColumnar.addActionListener(this);
+        menuFile.add(menuFileColumnar);
+
+        JCheckBoxMenuItem menuFileSpatialOrder = new JCheckBoxMenuItem(strings.getString("menu.file.spatialOrder"));
+        menuFileSpatialOrder.setToolTipText(strings.getString("menu.file.spatialOrder.tooltip"));
+        menuFileSpatialOrder.setSelected(editor.isSpatialOrder());
+        menuFileSpatialOrder.setActionCommand(AC_SPATIAL_ORDER);
+        menuFileSpatialOrder.addActionListener(this);
+        menuFile.add(menuFileSpatialOrder);
+
         JMenu menuEdit = new JMenu(strings.getString("menu.edit"));
         menuBar.add(menuEdit);
 
@@ -176,6 +194,23 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
         endSubElementModels.add(menuEditEndSubElement.getModel());
         menuEdit.add(menuEditEndSubElement);
 
+        menuEdit.addSeparator();
+
+        JMenuItem menuEditDelete = new JMenuItem(strings.getString("menu.edit.delete"));
+        menuEditDelete.setAccelerator(
+                KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
+        menuEditDelete.setActionCommand(AC_DELETE);
+        menuEditDelete.addActionListener(this);
+        menuEdit.add(menuEditDelete);
+
+        menuEdit.addSeparator();
+
+        JCheckBoxMenuItem menuEditSnapping = new JCheckBoxMenuItem(strings.getString("menu.edit.snapping"));
+        menuEditSnapping.setSelected(editor.isSnapping());
+        menuEditSnapping.setActionCommand(AC_SNAPPING);
+        menuEditSnapping.addActionListener(this);
+        menuEdit.add(menuEditSnapping);
+
         JMenu menuView = new JMenu(strings.getString("menu.view"));
         menuBar.add(menuView);
 
@@ -338,10 +373,19 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
                 openFile();
                 break;
             case AC_SAVE:
-                saveWkt(editor.getOpenFile());
+                saveWkt(editor.getOpenFile(), null);
                 break;
             case AC_SAVE_AS:
-                saveWkt(null);
+                saveWkt(null, null);
+                break;
+            case AC_COLUMNAR_STORAGE:
+                editor.setColumnarStorage(((AbstractButton) event.getSource()).isSelected());
+                break;
+            case AC_SPATIAL_ORDER:
+                editor.setSpatialOrder(((AbstractButton) event.getSource()).isSelected());
+                break;
+            case AC_SNAPPING:
+                editor.setSnapping(((AbstractButton) event.getSource()).isSelected());
                 break;
             case AC_CURSOR_SELECT:
                 editor.endCurrentElement();
@@ -375,6 +419,9 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
             case AC_END_SUB_ELEMENT:
                 editor.endCurrentSubElement();
                 break;
+            case AC_DELETE:
+                editor.deleteSelection();
+                break;
             case AC_ZOOM_IN:
                 wktPane.zoom(1.0);
                 break;
@@ -390,6 +437,27 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
         }
     }
 
+    /**
+     * Exits the editor. If files are still being saved, the frame is disabled
+     * and a dialog is shown until the saves have finished.
+     */
+    private void exit() {
+        if (editor.isSaving()) {
+            final JProgressBar progressBar = new JProgressBar();
+            progressBar.setIndeterminate(true);
+            final JOptionPane pane = new JOptionPane(new Object[]{strings.getString("progress.exit"), progressBar},
+                    JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, null, new Object[0]);
+            final JDialog dialog = pane.createDialog(this, getTitle());
+            dialog.setModal(false);
+            dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+            dialog.setVisible(true);
+            setEnabled(false);
+        } else {
+            dispose();
+        }
+        editor.shutdown();
+    }
+
     /**
      * Shows a file dialog to let the user select the file to open. Then opens the selected file.
      * If there are unsaved changes, shows a dialog to let the user choose what to do with the changes.
@@ -398,12 +466,9 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
         if (editor.areThereUnsavedChanges()) {
             switch (showUnsavedChangesDialog("saveBeforeOpen")) {
                 case 0:
-                    // Save
-                    if (!saveWkt(editor.getOpenFile())) {
-                        // Save was canceled
-                        return;
-                    }
-                    break;
+                    // Save, and continue when the save succeeded
+                    saveWkt(editor.getOpenFile(), this::chooseFileToOpen);
+                    return;
                 case 2:
                     // Don't save
                     // Nothing to do
@@ -414,7 +479,16 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
             }
         }
 
+        chooseFileToOpen();
+    }
+
+    /**
+     * Shows a file dialog to let the user select the file to open. Then opens
+     * the selected file, discarding any unsaved changes.
+     */
+    private void chooseFileToOpen() {
         final JFileChooser fc = new JFileChooser(getCurrentDirectory());
+        fc.addChoosableFileFilter(new WkbFileFilter(strings));
         fc.setFileFilter(new WktFileFilter(strings));
         final int result = fc.showOpenDialog(this);
 
@@ -422,35 +496,149 @@ public class WKTFrame extends JFrame implements ActionListener, WKTEditor.Elemen
             return;
         }
 
-        editor.open(fc.getSelectedFile());
+        final File file = fc.getSelectedFile();
+        final SwingWorker<Void, Void> loader = editor.open(file);
+        final ProgressMonitor monitor = new ProgressMonitor(this,
+                String.format(strings.getString("progress.open"), file.getName()), null, 0, 100);
+
+        loader.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                if (monitor.isCanceled()) {
+                    loader.cancel(false);
+                } else {
+                    monitor.setProgress(loader.getProgress());
+                }
+            } else if (loader.isDone()) {
+                monitor.close();
+                updateTitle();
+
+                if (!loader.isCancelled() && editor.getRejectCount() > 0) {
+                    showRejectsDialog();
+                }
+                if (!loader.isCancelled() && editor.getRoundedCount() > 0) {
+                    JOptionPane.showMessageDialog(this,
+                            String.format(strings.getString("dialog.rounded.message"), editor.getRoundedCount(),
+                                    file.getName()),
+                            strings.getString("dialog.rounded.title"), JOptionPane.WARNING_MESSAGE);
+                }
+                if (!loader.isCancelled() && editor.getJournalError() != null) {
+                    showJournalErrorDialog();
+                }
+            }
+        });
         updateTitle();
     }
 
+    /**
+     * Shows a dialog informing the user about the malformed elements, that
+     * were skipped while opening the current file.
+     */
+    private void showRejectsDialog() {
+        final List<WKTParseException> rejects = editor.getRejects();
+        StringBuilder message = new StringBuilder(String.format(strings.getString("dialog.rejects.message"),
+                editor.getRejectCount(), editor.getOpenFile().getName()));
+
+        for (int i = 0; i < Math.min(rejects.size(), MAX_DISPLAYED_REJECTS); i++) {
+            message.append('\n').append(rejects.get(i).getMessage());
+        }
+        if (editor.getRejectCount() > MAX_DISPLAYED_REJECTS) {
+            message.append("\n...");
+        }
+
+        JOptionPane.showMessageDialog(this, message.toString(), strings.getString("dialog.rejects.title"),
+                JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Shows a dialog informing the user, that the journal of the current file
+     * could not be replayed, so the file has been opened without the edits
+     * saved in it.
+     */
+    private void showJournalErrorDialog() {
+        JOptionPane.showMessageDialog(this,
+                String.format(strings.getString("dialog.journalFailed.message"), editor.getOpenFile().getName(),
+                        editor.getJournalError().getMessage()),
+                strings.getString("dialog.journalFailed.title"), JOptionPane.ERROR_MESSAGE);
+    }
+
     /**
      * Shows a file dialog to let the user select the destination file. If a
      * file was selected, forwards the save operation to the {@link WKTEditor}.
+     * The progress of the save is shown, and the user is informed if it fails.
      *
-     * @param file The file to save the wkt data to. Set to <code>null</code> to show file chooser dialog.
-     * @return Whether or not the save was performed (It might not have been if the user canceled the file chooser
+     * @param file    The file to save the wkt data to. Set to <code>null</code> to show file chooser dialog.
+     * @param onSaved Called when the save has succeeded, or <code>null</code>.
+     * @return Whether or not the save was started (It might not have been if the user canceled the file chooser
      * dialog).
      */
-    private boolean saveWkt(File file) {
+    private boolean saveWkt(File file, @Nullable Runnable onSaved) {
         if (file == null) {
             final JFileChooser fc = new JFileChooser(getCurrentDirectory());
+            fc.addChoosableFileFilter(new WkbFileFilter(strings));
             fc.setFileFilter(new WktFileFilter(strings));
             final int result = fc.showSaveDialog(this);
 
             if (result == JFileChooser.APPROVE_OPTION) {
                 file = fc.getSelectedFile();
+                // The format is determined by the extension
+                if (fc.getFileFilter() instanceof WkbFileFilter && FileFormat.of(file) != FileFormat.WKB) {
+                    file = new File(file.getPath() + FileFormat.WKB.getExtension());
+                }
+            }
+        }
+
+        if (file == null) {
+            return false;
+        }
+
+        if (editor.wouldOverwriteDecimals(file)) {
+            final int result = JOptionPane.showConfirmDialog(this,
+                    String.format(strings.getString("dialog.overwriteDecimals.message"), file.getName(),
+                            editor.getRoundedCount()),
+                    strings.getString("dialog.overwriteDecimals.title"), JOptionPane.YES_NO_OPTION,
+                    JOptionPane.WARNING_MESSAGE);
+            if (result != JOptionPane.YES_OPTION) {
+                return false;
             }
         }
 
-        if (file != null) {
-            editor.save(file);
-            updateTitle();
-            return true;
+        final SwingWorker<Void, Void> saver = editor.save(file);
+        if (saver == null) {
+            return false;
         }
-        return false;
+
+        final ProgressMonitor monitor = new ProgressMonitor(this,
+                String.format(strings.getString("progress.save"), file.getName()), null, 0, 100);
+        final File savedFile = file;
+        saver.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                if (monitor.isCanceled()) {
+                    saver.cancel(false);
+                } else {
+                    monitor.setProgress(saver.getProgress());
+                }
+            } else if (saver.isDone()) {
+                monitor.close();
+                updateTitle();
+                if (saver.isCancelled()) {
+                    return;
+                }
+
+                try {
+                    saver.get();
+                    if (onSaved != null) {
+                        onSaved.run();
+                    }
+                } catch (InterruptedException | ExecutionException exception) {
+                    JOptionPane.showMessageDialog(this,
+                            String.format(strings.getString("dialog.saveFailed.message"), savedFile.getName(),
+                                    exception.getCause() != null ? exception.getCause().getMessage() : null),
+                            strings.getString("dialog.saveFailed.title"), JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+        updateTitle();
+        return true;
     }
 
     /**
@@ -1,6 +1,5 @@
 package wkteditor.ui;
 
-import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import wkteditor.CursorMode;
 import wkteditor.WKTEditor;
@@ -11,19 +10,29 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.lang.ref.WeakReference;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * This pane displays the wkt elements, that are being edited.
  */
 public class WKTPane extends JComponent implements MouseListener, MouseMotionListener, MouseWheelListener, WKTEditor.SelectionChangedListener {
+    /**
+     * The interval at which unused elements are compressed.
+     */
+    private static final int COMPRESS_INTERVAL_MS = 1000;
+    /**
+     * The number of points packed or unpacked per interval.
+     */
+    private static final int COMPRESS_BATCH_POINTS = 200000;
+
     private WKTEditor editor;
     private BufferedImage bgImage;
     private BufferedImage bgImageScaled;
 
-    @NotNull
-    private WeakReference<WKTElement> hoverElement;
+    private int hoverId;
+    @Nullable
+    private Point snapPoint;
 
     private int dragX;
     private int dragY;
@@ -38,13 +47,18 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
         dragY = -1;
         select = null;
         selectionContainer = null;
-        hoverElement = new WeakReference<>(null);
+        hoverId = WKTElement.NO_ID;
+        snapPoint = null;
 
         setPreferredSize(new Dimension(200, 200));
         addMouseListener(this);
         addMouseMotionListener(this);
         addMouseWheelListener(this);
 
+        // The editor skips the ticks, while there is nothing to compress
+        Timer compressTimer = new Timer(COMPRESS_INTERVAL_MS, event -> compressUnusedElements());
+        compressTimer.start();
+
         editor.getDisplayOptions().addChangeListener(new DisplayOptions.ChangeListener() {
             @Override
             public void pointRadiusChanged(int oldRadius, int newRadius) {
@@ -58,16 +72,25 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
 
             @Override
             public void translationChanged(double oldX, double oldY, double newX, double newY) {
-
+                compressUnusedElements();
             }
 
             @Override
             public void zoomChanged(double oldZoom, double newZoom) {
                 scaleBackgroundImage(newZoom);
+                compressUnusedElements();
             }
         });
     }
 
+    /**
+     * Lets the editor compress the elements outside of the visible area, and
+     * decompress the elements, that have become visible or selected.
+     */
+    private void compressUnusedElements() {
+        editor.compressUnusedElements(getVisibleArea(), COMPRESS_BATCH_POINTS);
+    }
+
     /**
      * Sets an image that is displayed in the background of the wkt elements.
      *
@@ -115,10 +138,9 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
                     null);
         }
 
-        // Foreground
-        WKTElement highlightElement = hoverElement.get();
-        for (WKTElement element : editor.getElements()) {
-            if (element.equals(highlightElement)) {
+        // Foreground, elements outside of the visible area are not painted
+        editor.forEachElementIn(getVisibleArea(), element -> {
+            if (element.getId() == hoverId) {
                 g2d.setColor(dOpt.getHighlightColor());
             } else if (editor.isSelected(element)) {
                 g2d.setColor(dOpt.getSelectedColor());
@@ -127,10 +149,18 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
             }
 
             element.paint(g2d, dOpt);
-        }
+        });
 
         g2d.setStroke(new BasicStroke(1));
 
+        // The point a click would snap to
+        if (snapPoint != null) {
+            final int radius = dOpt.getPointRadius() + 2;
+            g2d.setColor(dOpt.getHighlightColor());
+            g2d.drawOval(transform.transformX(snapPoint.x) - radius, transform.transformY(snapPoint.y) - radius,
+                    radius * 2, radius * 2);
+        }
+
         // Selection
         if (selectionContainer != null) {
             g2d.setColor(new Color(128, 128, 128, 84));
@@ -150,6 +180,22 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
         }
     }
 
+    /**
+     * Gets the area of the wkt coordinate space, that is visible in this
+     * pane. The area is extended by the size of points and lines, so elements
+     * partly painted into the pane are within the area.
+     *
+     * @return The visible area in wkt coordinates.
+     */
+    private Rectangle getVisibleArea() {
+        DisplayOptions dOpt = editor.getDisplayOptions();
+        Transform transform = dOpt.getTransform();
+        final int margin = transform.reverseZoom(dOpt.getPointRadius() + (int) Math.ceil(dOpt.getLineWidth())) + 1;
+
+        return new Rectangle(transform.reverseTransformX(0) - margin, transform.reverseTransformY(0) - margin,
+                transform.reverseZoom(getWidth()) + margin * 2, transform.reverseZoom(getHeight()) + margin * 2);
+    }
+
     @Override
     public void mouseClicked(MouseEvent event) {
         if (event.getButton() == MouseEvent.BUTTON1) {
@@ -286,22 +332,17 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
     @Override
     public void mouseMoved(MouseEvent event) {
         Transform transform = editor.getDisplayOptions().getTransform();
+        final int x = transform.reverseTransformX(event.getX());
+        final int y = transform.reverseTransformY(event.getY());
 
-        WKTElement element = editor.getSelectedElement(
-                transform.reverseTransformX(event.getX()),
-                transform.reverseTransformY(event.getY()));
-        WKTElement hover = hoverElement.get();
+        WKTElement element = editor.getSelectedElement(x, y);
+        final int id = element == null ? WKTElement.NO_ID : element.getId();
+        Point snapped = editor.getCursorMode().isElement() ? editor.snap(x, y) : null;
 
-        if (element == null) {
-            if (hover != null) {
-                hoverElement = new WeakReference<>(null);
-                repaint();
-            }
-        } else {
-            if (!element.equals(hover)) {
-                hoverElement = new WeakReference<>(element);
-                repaint();
-            }
+        if (id != hoverId || !Objects.equals(snapped, snapPoint)) {
+            hoverId = id;
+            snapPoint = snapped;
+            repaint();
         }
     }
 
@@ -314,10 +355,15 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
     public void onSelectionChanged(Set<WKTElement> selection) {
         selectionContainer = null;
         for (WKTElement element : selection) {
+            Rectangle rect = element.getContainingRect();
+            if (rect == null) {
+                // Empty elements have no extent
+                continue;
+            }
             if (selectionContainer == null) {
-                selectionContainer = element.getContainingRect();
+                selectionContainer = rect;
             } else {
-                selectionContainer = selectionContainer.union(element.getContainingRect());
+                selectionContainer = selectionContainer.union(rect);
             }
         }
 
@@ -330,6 +376,7 @@ public class WKTPane extends JComponent implements MouseListener, MouseMotionLis
             selectionContainer.height = transform.zoom(selectionContainer.height) + dOpt.getPointDiameter();
         }
 
+        compressUnusedElements();
         repaint();
     }
 }
@@ -22,6 +22,10 @@ public class WktFileFilter extends FileFilter {
             return false;
         }
         String ext = parts[parts.length - 1].toLowerCase();
+        if ("gz".equals(ext) && parts.length > 2) {
+            // Compressed wkt files
+            ext = parts[parts.length - 2].toLowerCase();
+        }
         return "wkt".equals(ext);
     }
 